@@ -36,6 +36,16 @@ public class Config {
    */
   public final int deckSize;
 
+  /**
+   * The seed used for shuffling the deck (negative for a random seed)
+   */
+  public final long deckSeed;
+
+  /**
+   * The number of milliseconds a computer player waits between its key presses
+   */
+  public final long computerActionMillis;
+
   /**
    * The number of human players in the game.
    */
@@ -56,6 +66,36 @@ public class Config {
    */
   public final boolean hints;
 
+  /**
+   * The minimal number of cards for which sets are searched in parallel (0 to always search sequentially)
+   */
+  public final int parallelSearchThreshold;
+
+  /**
+   * Whether the dealer makes sure there is a set on the table after every deal (swapping cards from the deck if needed)
+   */
+  public final boolean guaranteeSet;
+
+  /**
+   * The number of worker threads that validate the set claims (0 to validate each claim on the thread of its player)
+   */
+  public final int claimValidators;
+
+  /**
+   * Whether to measure the latency of every key press, from the press until its token is painted
+   */
+  public final boolean latencyTracing;
+
+  /**
+   * Whether to profile the table's locks (acquisitions, wait and hold times, and the call sites that wait)
+   */
+  public final boolean lockProfiling;
+
+  /**
+   * The number of milliseconds a game thread may make no progress for before it is reported as stalled (0 for no watchdog)
+   */
+  public final long watchdogStallMillis;
+
   /**
    * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
    */
@@ -81,11 +121,36 @@ public class Config {
    */
   public final long tableDelayMillis;
 
+  /**
+   * The number of milliseconds between the ticks of the timer that runs the countdowns, freezes and animations
+   */
+  public final long timerTickMillis;
+
+  /**
+   * The number of milliseconds the threads of a game have to terminate once it ends (the late ones are reported)
+   */
+  public final long shutdownTimeoutMillis;
+
   /**
    * The number of milliseconds to pause at the end of the game before closing
    */
   public final long endGamePauseMillies;
 
+  /**
+   * The file the results of all the games are kept in (empty to keep no leaderboard)
+   */
+  public final String leaderboardFile;
+
+  /**
+   * The width of the skill bands players are matched within by the lobby
+   */
+  public final int lobbySkillBand;
+
+  /**
+   * The number of milliseconds a player waits in the lobby before being matched with nearby skill bands and computers
+   */
+  public final long lobbyMaxWaitMillis;
+
   /**
    * The names of the players to display on the screen
    * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -132,15 +197,39 @@ public class Config {
    */
   public final int fontSize;
 
+  /**
+   * Whether to render the game in the terminal instead of a window
+   * Note: the terminal is also used when no window can be opened (e.g. on a headless server)
+   */
+  public final boolean terminalUi;
+
+  /**
+   * The number of milliseconds between terminal screen refreshes
+   */
+  public final long terminalRefreshMillis;
+
+  /**
+   * The TCP port remote players connect to (0 to disable the network server)
+   */
+  public final int networkPort;
+
+  /**
+   * The number of bytes of updates kept for spectators (a spectator further behind is resynced from a snapshot)
+   */
+  public final int spectatorBufferBytes;
+
   /**
    * The scancodes of the keyboard input data for each player
    * Notes:
    * 1. This should correspond to the number of human players and the dimensions of the table card grid (i.e. the
    * first n codes are for the first row, the 2nd n codes are for the 2nd row etc., n being the number of columns).
    * 2. If the number of entries here does not match the number of human players a warning will be issued
+   * 3. A player with no keys (e.g. a computer or remote player) has an empty key map
    */
   private final int[][] playerKeys;
 
+  private static final int[] NO_KEYS = new int[0];
+
   /**
    * The default scan codes data (this is the same as in the default config.properties file)
    */
@@ -156,7 +245,7 @@ public class Config {
    * @param filename - the name of the configuration file.
    * @return - a properties object with the configuration file contents.
    */
-  private static Properties loadProperties(String filename, Logger logger) {
+  static Properties loadProperties(String filename, Logger logger) {
     Properties properties = new Properties();
 
     if (filename == null || filename.isEmpty()) logger.severe(
@@ -214,7 +303,17 @@ public class Config {
     featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
     featureCount =
       Integer.parseInt(properties.getProperty("FeatureCount", "4"));
-    deckSize = (int) Math.pow(featureSize, featureCount);
+    long cards = 1;
+    for (int i = 0; i < featureCount && cards <= Integer.MAX_VALUE; i++) cards *= featureSize;
+    if (cards > Integer.MAX_VALUE) throw new IllegalArgumentException(
+      "deck size " +
+      featureSize +
+      "^" +
+      featureCount +
+      " is too large."
+    );
+    deckSize = (int) cards;
+    deckSeed = Long.parseLong(properties.getProperty("DeckSeed", "-1"));
 
     // gameplay settings
     humanPlayers =
@@ -222,8 +321,34 @@ public class Config {
     computerPlayers =
       Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
     players = humanPlayers + computerPlayers;
+    computerActionMillis =
+      (long) (
+        Double.parseDouble(
+          properties.getProperty("ComputerActionSeconds", "0")
+        ) *
+        1000.0
+      );
 
     hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+    latencyTracing =
+      Boolean.parseBoolean(properties.getProperty("LatencyTracing", "False"));
+    parallelSearchThreshold =
+      Integer.parseInt(
+        properties.getProperty("ParallelSearchThreshold", "500")
+      );
+    lockProfiling =
+      Boolean.parseBoolean(properties.getProperty("LockProfiling", "False"));
+    watchdogStallMillis =
+      (long) (
+        Double.parseDouble(
+          properties.getProperty("WatchdogStallSeconds", "0")
+        ) *
+        1000.0
+      );
+    guaranteeSet =
+      Boolean.parseBoolean(properties.getProperty("GuaranteeSet", "False"));
+    claimValidators =
+      Integer.parseInt(properties.getProperty("ClaimValidators", "0"));
     turnTimeoutMillis =
       (long) (
         Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) *
@@ -253,11 +378,31 @@ public class Config {
         Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) *
         1000.0
       );
+    timerTickMillis =
+      (long) (
+        Double.parseDouble(properties.getProperty("TimerTickSeconds", "0.01")) *
+        1000.0
+      );
+    shutdownTimeoutMillis =
+      (long) (
+        Double.parseDouble(
+          properties.getProperty("ShutdownTimeoutSeconds", "2")
+        ) *
+        1000.0
+      );
     endGamePauseMillies =
       (long) (
         Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) *
         1000.0
       );
+    leaderboardFile = properties.getProperty("LeaderboardFile", "").trim();
+    lobbySkillBand =
+      Integer.parseInt(properties.getProperty("LobbySkillBand", "100"));
+    lobbyMaxWaitMillis =
+      (long) (
+        Double.parseDouble(properties.getProperty("LobbyMaxWaitSeconds", "10")) *
+        1000.0
+      );
 
     // ui settings
     String[] names = properties
@@ -279,10 +424,29 @@ public class Config {
     playerCellHeight =
       Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
     fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+    terminalUi =
+      Boolean.parseBoolean(properties.getProperty("TerminalUi", "False"));
+    terminalRefreshMillis =
+      Math.max(
+        1L,
+        (long) (
+          Double.parseDouble(
+            properties.getProperty("TerminalRefreshSeconds", "0.1")
+          ) *
+          1000.0
+        )
+      );
+
+    // network settings
+    networkPort = Integer.parseInt(properties.getProperty("NetworkPort", "0"));
+    spectatorBufferBytes =
+      Integer.parseInt(properties.getProperty("SpectatorBufferSize", "1048576"));
 
     // keyboard input data
-    playerKeys = new int[players][rows * columns];
+    // only the players with keys get a key map, so the computer players of a large table cost nothing
+    playerKeys = new int[players][];
     for (int i = 0; i < players; i++) {
+      playerKeys[i] = NO_KEYS;
       String defaultCodes = "";
       if (i < 2) defaultCodes = playerKeysDefaults[i];
       String playerKeysString = properties.getProperty(
@@ -290,6 +454,7 @@ public class Config {
         defaultCodes
       );
       if (playerKeysString.length() > 0) {
+        playerKeys[i] = new int[tableSize];
         String[] codes = playerKeysString.split(",");
         if (codes.length != tableSize) logger.severe(
           "warning: player " +
@@ -8,11 +8,23 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final LatencyTracer tracer;
+    public final TimerWheel timers;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new LatencyTracer(config));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, LatencyTracer tracer) {
+        this(logger, config, ui, util, tracer, new TimerWheel(logger, config));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, LatencyTracer tracer, TimerWheel timers) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.tracer = tracer;
+        this.timers = timers;
     }
 }
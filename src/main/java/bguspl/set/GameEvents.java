@@ -0,0 +1,145 @@
+package bguspl.set;
+
+/**
+ * Emits the game engine's Java Flight Recorder events (see JfrEvents for the event types).
+ * The engine only calls this class, which never touches the JFR API itself, so the game still runs on a JVM without
+ * JFR. Every method returns at once when JFR is not available or its event type is not being recorded; the methods
+ * that start a duration event return a handle to pass to the matching end method (null if the event is not recorded,
+ * which the end methods accept).
+ */
+public final class GameEvents {
+
+    /**
+     * True iff the JVM has the JFR API.
+     */
+    private static final boolean AVAILABLE = available();
+
+    private GameEvents() {
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Called when a player submits a set claim to the dealer.
+     *
+     * @param player - the player.
+     * @param slots  - the slots of the claimed set.
+     */
+    public static void claimSubmitted(int player, int[] slots) {
+        if (AVAILABLE) JfrEvents.claimSubmitted(player, slots);
+    }
+
+    /**
+     * Called when a player claims a set, before it is checked.
+     *
+     * @param player - the player.
+     * @param slots  - the slots of the claimed set.
+     * @return - the handle of the claim event.
+     */
+    public static Object claimStarted(int player, int[] slots) {
+        return AVAILABLE ? JfrEvents.claimStarted(player, slots) : null;
+    }
+
+    /**
+     * Called when the player learns the verdict on its claim.
+     *
+     * @param claim   - the handle of the claim event.
+     * @param verdict - the verdict.
+     */
+    public static void claimDecided(Object claim, String verdict) {
+        if (claim != null) JfrEvents.claimDecided(claim, verdict);
+    }
+
+    /**
+     * @return - the handle of a reshuffle event, called when the dealer starts a reshuffle.
+     */
+    public static Object reshuffleStarted() {
+        return AVAILABLE ? JfrEvents.reshuffleStarted() : null;
+    }
+
+    /**
+     * Called when the dealer is done reshuffling.
+     *
+     * @param reshuffle  - the handle of the reshuffle event.
+     * @param cardsMoved - the number of cards removed from and placed on the table.
+     */
+    public static void reshuffleEnded(Object reshuffle, int cardsMoved) {
+        if (reshuffle != null) JfrEvents.reshuffleEnded(reshuffle, cardsMoved);
+    }
+
+    /**
+     * Called before a thread waits for the table's lock.
+     *
+     * @return - the time the thread started waiting (0 if the lock events are not recorded).
+     */
+    public static long tableLockRequested() {
+        return AVAILABLE && JfrEvents.tableLockEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Called once a thread holds the table's lock.
+     *
+     * @param write     - true for the write lock, false for the read lock.
+     * @param requested - the value tableLockRequested returned.
+     * @return - the handle of the lock event.
+     */
+    public static Object tableLocked(boolean write, long requested) {
+        return requested != 0 ? JfrEvents.tableLocked(write, requested) : null;
+    }
+
+    /**
+     * Called when a thread releases the table's lock.
+     *
+     * @param lock - the handle of the lock event.
+     */
+    public static void tableUnlocked(Object lock) {
+        if (lock != null) JfrEvents.tableUnlocked(lock);
+    }
+
+    /**
+     * Called when a player is frozen.
+     *
+     * @param player  - the player.
+     * @param millis  - the duration of the freeze.
+     * @param penalty - true for a penalty, false for a point.
+     * @return - the handle of the freeze event.
+     */
+    public static Object freezeStarted(int player, long millis, boolean penalty) {
+        return AVAILABLE ? JfrEvents.freezeStarted(player, millis, penalty) : null;
+    }
+
+    /**
+     * Called when the freeze of a player expires.
+     *
+     * @param freeze - the handle of the freeze event.
+     */
+    public static void freezeEnded(Object freeze) {
+        if (freeze != null) JfrEvents.freezeEnded(freeze);
+    }
+
+    /**
+     * @return - the handle of a set search event, called before searching for sets.
+     */
+    public static Object setSearchStarted() {
+        return AVAILABLE ? JfrEvents.setSearchStarted() : null;
+    }
+
+    /**
+     * Called after searching for sets.
+     *
+     * @param search    - the handle of the set search event.
+     * @param algorithm - the search algorithm.
+     * @param inputSize - the number of cards searched.
+     * @param found     - the number of sets found.
+     */
+    public static void setSearchEnded(Object search, String algorithm, int inputSize, int found) {
+        if (search != null) JfrEvents.setSearchEnded(search, algorithm, inputSize, found);
+    }
+}
@@ -0,0 +1,202 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Owns the threads of a game and shuts them down within a bounded time.
+ * Every thread is started through the lifecycle together with the action that asks it to stop (services whose threads
+ * are private, like the timer wheel, are registered with their stop action only). The shutdown stops them in the
+ * reverse order to the order they were started in, each one after the ones started after it terminated, against a
+ * single deadline. A thread still running at the deadline is reported as a straggler, with its stack, and left behind;
+ * the threads are daemons, so a straggler cannot keep the process alive either.
+ * <p>
+ * A thread leaves the lifecycle when it terminates, so a long running lifecycle that keeps starting threads (e.g. the
+ * games of a lobby) only holds the ones still running.
+ */
+public class GameLifecycle {
+
+    /**
+     * A thread (or a service) owned by the lifecycle.
+     */
+    private static final class Member {
+
+        private final String name;
+
+        /**
+         * The thread, or null for a service that only needs to be told to stop.
+         */
+        private final Thread thread;
+
+        /**
+         * Asks the thread to stop, or null to interrupt it.
+         */
+        private final Runnable stop;
+
+        private Member(String name, Thread thread, Runnable stop) {
+            this.name = name;
+            this.thread = thread;
+            this.stop = stop;
+        }
+    }
+
+    private final Logger logger;
+    private final long timeoutMillis;
+
+    /**
+     * The members still running, in the order they were started in (guarded by this).
+     */
+    private final List<Member> members = new ArrayList<>();
+
+    /**
+     * True once the shutdown started: nothing can be started anymore (guarded by this).
+     */
+    private boolean shutdown;
+
+    /**
+     * The names of the threads that outlived the shutdown deadline (guarded by this).
+     */
+    private List<String> stragglers = Collections.emptyList();
+
+    /**
+     * @param logger        - the logger the stragglers are reported to.
+     * @param timeoutMillis - the number of milliseconds the whole shutdown may take.
+     */
+    public GameLifecycle(Logger logger, long timeoutMillis) {
+        this.logger = logger;
+        this.timeoutMillis = Math.max(timeoutMillis, 0);
+    }
+
+    /**
+     * @return - the number of milliseconds the whole shutdown may take.
+     */
+    public long timeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Starts a daemon thread owned by the lifecycle.
+     *
+     * @param name - the name of the thread.
+     * @param body - the code the thread runs.
+     * @param stop - asks the thread to stop (null to interrupt it).
+     * @return - the thread, or null if the lifecycle is already shutting down (the thread is not started then).
+     */
+    public Thread start(String name, Runnable body, Runnable stop) {
+        ThreadLogger thread = new ThreadLogger(() -> {
+            try {
+                body.run();
+            } finally {
+                leave(Thread.currentThread());
+            }
+        }, name, logger);
+        thread.setDaemon(true);
+        synchronized (this) {
+            if (shutdown) return null;
+            // started under the lock, so the members are in the order the threads were started in
+            members.add(new Member(name, thread, stop));
+            thread.startWithLog();
+        }
+        return thread;
+    }
+
+    /**
+     * Removes the member of a thread that terminated.
+     */
+    private synchronized void leave(Thread thread) {
+        for (int i = members.size() - 1; i >= 0; i--)
+            if (members.get(i).thread == thread) {
+                members.remove(i);
+                return;
+            }
+    }
+
+    /**
+     * @return - the number of members (the running threads and the registered services).
+     */
+    synchronized int members() {
+        return members.size();
+    }
+
+    /**
+     * Registers a service with its own threads, to be told to stop during the shutdown.
+     *
+     * @param name - the name of the service.
+     * @param stop - stops the service.
+     */
+    public void register(String name, Runnable stop) {
+        synchronized (this) {
+            if (!shutdown) {
+                members.add(new Member(name, null, stop));
+                return;
+            }
+        }
+        stop(new Member(name, null, stop));
+    }
+
+    /**
+     * Stops all the members, the last one started first, waiting for each thread until the deadline. Only the first
+     * call shuts down; the next ones return the stragglers of the first.
+     *
+     * @return - the names of the threads still running at the deadline.
+     */
+    public List<String> shutdown() {
+        List<Member> stopping;
+        synchronized (this) {
+            if (shutdown) return stragglers;
+            shutdown = true;
+            stopping = new ArrayList<>(members);
+        }
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        boolean interrupted = false;
+        List<String> late = new ArrayList<>();
+        for (int i = stopping.size() - 1; i >= 0; i--) {
+            Member member = stopping.get(i);
+            stop(member);
+            Thread thread = member.thread;
+            // a member shutting down the lifecycle cannot wait for itself
+            if (thread == null || thread == Thread.currentThread()) continue;
+            for (long remaining; thread.isAlive() && (remaining = deadline - System.nanoTime()) > 0; ) try {
+                thread.join(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+            } catch (InterruptedException e) {
+                // the deadline still holds: keep waiting, and let the caller know afterwards
+                interrupted = true;
+            }
+            if (thread.isAlive()) {
+                late.add(member.name);
+                logger.severe("thread " + member.name + " did not terminate within " + timeoutMillis + " ms"
+                        + stack(thread));
+            }
+        }
+        synchronized (this) {
+            stragglers = Collections.unmodifiableList(late);
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return stragglers;
+    }
+
+    /**
+     * @return - the names of the threads that outlived the shutdown deadline (empty until the shutdown is done).
+     */
+    public synchronized List<String> stragglers() {
+        return stragglers;
+    }
+
+    private void stop(Member member) {
+        try {
+            if (member.stop != null) member.stop.run();
+            else if (member.thread != null) member.thread.interrupt();
+        } catch (RuntimeException e) {
+            logger.severe("stopping " + member.name + " failed: " + e);
+        }
+    }
+
+    private static String stack(Thread thread) {
+        StringBuilder stack = new StringBuilder();
+        for (StackTraceElement frame : thread.getStackTrace())
+            stack.append(System.lineSeparator()).append("    at ").append(frame);
+        return stack.toString();
+    }
+}
@@ -0,0 +1,195 @@
+package bguspl.set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.Arrays;
+
+/**
+ * The Java Flight Recorder event types of the game engine (only loaded by GameEvents when the JVM has JFR).
+ * The events are in the "Set Game" category, so a recording can put them next to the GC and thread events.
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    @Name("bguspl.set.ClaimSubmitted")
+    @Label("Claim Submitted")
+    @Category({"Set Game", "Claims"})
+    @Description("A player submitted a set claim to the dealer")
+    @StackTrace(false)
+    static final class ClaimSubmitted extends Event {
+        @Label("Player")
+        int player;
+        @Label("Slots")
+        String slots;
+    }
+
+    @Name("bguspl.set.ClaimVerdict")
+    @Label("Claim Verdict")
+    @Category({"Set Game", "Claims"})
+    @Description("A set claim, from the claim until the player learned the verdict")
+    @StackTrace(false)
+    static final class ClaimVerdict extends Event {
+        @Label("Player")
+        int player;
+        @Label("Slots")
+        String slots;
+        @Label("Verdict")
+        String verdict;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Category("Set Game")
+    @Description("The dealer returned the cards on the table to the deck and dealt new ones")
+    @StackTrace(false)
+    static final class Reshuffle extends Event {
+        @Label("Cards Moved")
+        int cardsMoved;
+    }
+
+    @Name("bguspl.set.TableLock")
+    @Label("Table Lock")
+    @Category({"Set Game", "Locks"})
+    @Description("The table's lock was held (the duration is the hold time)")
+    @StackTrace(false)
+    static final class TableLock extends Event {
+        @Label("Write")
+        boolean write;
+        @Label("Wait Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitTime;
+    }
+
+    @Name("bguspl.set.Freeze")
+    @Label("Player Freeze")
+    @Category("Set Game")
+    @Description("A player was frozen after a point or a penalty")
+    @StackTrace(false)
+    static final class Freeze extends Event {
+        @Label("Player")
+        int player;
+        @Label("Freeze Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long freezeTime;
+        @Label("Penalty")
+        boolean penalty;
+    }
+
+    @Name("bguspl.set.SetSearch")
+    @Label("Set Search")
+    @Category("Set Game")
+    @Description("A search for the legal sets among some cards")
+    @StackTrace(false)
+    static final class SetSearch extends Event {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Input Size")
+        int inputSize;
+        @Label("Sets Found")
+        int found;
+    }
+
+    private static final EventType CLAIM_SUBMITTED = EventType.getEventType(ClaimSubmitted.class);
+    private static final EventType CLAIM_VERDICT = EventType.getEventType(ClaimVerdict.class);
+    private static final EventType RESHUFFLE = EventType.getEventType(Reshuffle.class);
+    private static final EventType TABLE_LOCK = EventType.getEventType(TableLock.class);
+    private static final EventType FREEZE = EventType.getEventType(Freeze.class);
+    private static final EventType SET_SEARCH = EventType.getEventType(SetSearch.class);
+
+    static void claimSubmitted(int player, int[] slots) {
+        if (!CLAIM_SUBMITTED.isEnabled()) return;
+        ClaimSubmitted event = new ClaimSubmitted();
+        event.player = player;
+        event.slots = Arrays.toString(slots);
+        event.commit();
+    }
+
+    static Object claimStarted(int player, int[] slots) {
+        if (!CLAIM_VERDICT.isEnabled()) return null;
+        ClaimVerdict event = new ClaimVerdict();
+        event.player = player;
+        event.slots = Arrays.toString(slots);
+        event.begin();
+        return event;
+    }
+
+    static void claimDecided(Object claim, String verdict) {
+        ClaimVerdict event = (ClaimVerdict) claim;
+        event.end();
+        event.verdict = verdict;
+        if (event.shouldCommit()) event.commit();
+    }
+
+    static Object reshuffleStarted() {
+        if (!RESHUFFLE.isEnabled()) return null;
+        Reshuffle event = new Reshuffle();
+        event.begin();
+        return event;
+    }
+
+    static void reshuffleEnded(Object reshuffle, int cardsMoved) {
+        Reshuffle event = (Reshuffle) reshuffle;
+        event.end();
+        event.cardsMoved = cardsMoved;
+        if (event.shouldCommit()) event.commit();
+    }
+
+    static boolean tableLockEnabled() {
+        return TABLE_LOCK.isEnabled();
+    }
+
+    static Object tableLocked(boolean write, long requested) {
+        TableLock event = new TableLock();
+        event.write = write;
+        event.waitTime = System.nanoTime() - requested;
+        event.begin();
+        return event;
+    }
+
+    static void tableUnlocked(Object lock) {
+        TableLock event = (TableLock) lock;
+        event.end();
+        if (event.shouldCommit()) event.commit();
+    }
+
+    static Object freezeStarted(int player, long millis, boolean penalty) {
+        if (!FREEZE.isEnabled()) return null;
+        Freeze event = new Freeze();
+        event.player = player;
+        event.freezeTime = millis;
+        event.penalty = penalty;
+        event.begin();
+        return event;
+    }
+
+    static void freezeEnded(Object freeze) {
+        Freeze event = (Freeze) freeze;
+        event.end();
+        if (event.shouldCommit()) event.commit();
+    }
+
+    static Object setSearchStarted() {
+        if (!SET_SEARCH.isEnabled()) return null;
+        SetSearch event = new SetSearch();
+        event.begin();
+        return event;
+    }
+
+    static void setSearchEnded(Object search, String algorithm, int inputSize, int found) {
+        SetSearch event = (SetSearch) search;
+        event.end();
+        event.algorithm = algorithm;
+        event.inputSize = inputSize;
+        event.found = found;
+        if (event.shouldCommit()) event.commit();
+    }
+}
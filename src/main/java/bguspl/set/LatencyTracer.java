@@ -0,0 +1,260 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures how long each key press takes to become a token on the screen.
+ * A key press is stamped when it is queued for its player, and the stamp follows it through the stages below. The
+ * latency of every stage is counted in a per player histogram with power of two nanosecond buckets, so recording
+ * never allocates or locks.
+ * <p>
+ * Each player's press is in flight on its player thread from the dequeue to the placement, so that part of the state
+ * is only written by that thread. The dispatch may be deferred behind the card animations and run on the timer thread
+ * after the player is done with the press, so it carries the press's stamp instead of reading the press in flight; the
+ * paint is reported by the user interface thread.
+ */
+public class LatencyTracer {
+
+    /**
+     * The stages of a key press, each measured from the end of the previous one.
+     */
+    public enum Stage {
+        /** From the key press until the player thread takes it from the queue. */
+        QUEUE,
+        /** From the dequeue until the table accepts the token. */
+        PLACE,
+        /** The user interface call that shows the token (any wait for the card animations only counts in the total). */
+        DISPATCH,
+        /** From the dispatch until the user interface painted the token. */
+        PAINT,
+        /** From the key press until the token was painted (or dispatched, if the user interface does not paint). */
+        TOTAL,
+        /** From a set claim until the player learns the dealer's verdict (measured separately from the key presses). */
+        VERDICT
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final int BUCKETS = Long.SIZE;
+
+    private final boolean enabled;
+    private final int players;
+
+    /**
+     * The press time and the end of the last stage of each player's press in flight (0 if none).
+     */
+    private final long[] pressed;
+    private final long[] lastMark;
+
+    /**
+     * The press time and the dispatch time of each player's token that was not painted yet (0 if none).
+     */
+    private final AtomicLongArray paintPressed;
+    private final AtomicLongArray paintDispatched;
+
+    /**
+     * The number of samples in each bucket, indexed [player][stage][bucket].
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * True iff the user interface reports its paints (otherwise the total ends at the dispatch).
+     */
+    private volatile boolean painting;
+
+    public LatencyTracer(Config config) {
+        this(config.latencyTracing, config.players);
+    }
+
+    LatencyTracer(boolean enabled, int players) {
+        this.enabled = enabled;
+        this.players = players;
+        pressed = new long[players];
+        lastMark = new long[players];
+        paintPressed = new AtomicLongArray(players);
+        paintDispatched = new AtomicLongArray(players);
+        counts = new AtomicLongArray(enabled ? players * STAGES.length * BUCKETS : 0);
+    }
+
+    /**
+     * @return - true iff the latencies are recorded.
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * @return - the time stamp of a key press happening now (0 if the tracer is disabled).
+     */
+    public long stamp() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Called by the player thread when it takes a key press from its queue.
+     *
+     * @param player - the player.
+     * @param stamp  - the time stamp of the key press.
+     */
+    public void dequeued(int player, long stamp) {
+        if (!enabled || stamp == 0) return;
+        long now = System.nanoTime();
+        record(player, Stage.QUEUE, now - stamp);
+        pressed[player] = stamp;
+        lastMark[player] = now;
+    }
+
+    /**
+     * Called by the player thread when the table accepted the player's token.
+     *
+     * @param player - the player.
+     * @return - the time stamp of the key press, to pass to dispatched (0 if it is not traced).
+     */
+    public long placed(int player) {
+        mark(player, Stage.PLACE);
+        return enabled ? pressed[player] : 0;
+    }
+
+    /**
+     * Called (on any thread) when the user interface returned from showing a player's token.
+     *
+     * @param player  - the player.
+     * @param pressed - the time stamp of the key press, returned by placed.
+     * @param started - the time stamp (see stamp) taken just before the user interface call.
+     */
+    public void dispatched(int player, long pressed, long started) {
+        if (!enabled || pressed == 0) return;
+        long now = System.nanoTime();
+        record(player, Stage.DISPATCH, now - started);
+        if (painting) {
+            // the paint takes the dispatch time first, so the press time must already be there
+            paintPressed.set(player, pressed);
+            paintDispatched.set(player, now);
+        } else record(player, Stage.TOTAL, now - pressed);
+    }
+
+    /**
+     * Called by the player thread when it is done with a key press (whether or not it placed a token). A dispatch of
+     * the press that is still deferred is recorded all the same, as it carries the press's stamp.
+     */
+    public void done(int player) {
+        if (enabled) pressed[player] = 0;
+    }
+
+    /**
+     * Called by a user interface that reports its paints, once it is constructed.
+     */
+    public void paintsReported() {
+        painting = true;
+    }
+
+    /**
+     * Called by the user interface after it painted the table: the tokens dispatched before the paint started are on
+     * the screen.
+     *
+     * @param started - the time (System.nanoTime) the paint started at.
+     */
+    public void painted(long started) {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        for (int player = 0; player < players; player++) {
+            long dispatched = paintDispatched.get(player);
+            if (dispatched == 0 || dispatched - started > 0 || !paintDispatched.compareAndSet(player, dispatched, 0))
+                continue;
+            record(player, Stage.PAINT, now - dispatched);
+            record(player, Stage.TOTAL, now - paintPressed.get(player));
+        }
+    }
+
+    /**
+     * Called by the player thread when it learns the verdict on its set claim.
+     *
+     * @param player  - the player.
+     * @param claimed - the time stamp of the claim.
+     */
+    public void verdict(int player, long claimed) {
+        if (enabled && claimed != 0) record(player, Stage.VERDICT, System.nanoTime() - claimed);
+    }
+
+    private long mark(int player, Stage stage) {
+        long now = System.nanoTime();
+        if (!enabled || pressed[player] == 0) return now;
+        record(player, stage, now - lastMark[player]);
+        lastMark[player] = now;
+        return now;
+    }
+
+    private void record(int player, Stage stage, long nanos) {
+        int bucket = nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+        counts.incrementAndGet((player * STAGES.length + stage.ordinal()) * BUCKETS + Math.min(bucket, BUCKETS - 1));
+    }
+
+    /**
+     * Returns the latency histogram of a stage: bucket b counts the samples shorter than 2^b nanoseconds (and at least
+     * 2^(b-1) nanoseconds).
+     *
+     * @param player - the player.
+     * @param stage  - the stage.
+     * @return - a copy of the histogram.
+     */
+    public long[] histogram(int player, Stage stage) {
+        long[] histogram = new long[BUCKETS];
+        if (!enabled) return histogram;
+        int offset = (player * STAGES.length + stage.ordinal()) * BUCKETS;
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+            histogram[bucket] = counts.get(offset + bucket);
+        return histogram;
+    }
+
+    /**
+     * @param player     - the player.
+     * @param stage      - the stage.
+     * @param percentile - the percentile, between 0 and 100.
+     * @return - an upper bound of the latency of the stage at the percentile, in nanoseconds (0 if no samples).
+     */
+    public long percentileNanos(int player, Stage stage, double percentile) {
+        return percentileNanos(histogram(player, stage), percentile);
+    }
+
+    /**
+     * @param stage      - the stage.
+     * @param percentile - the percentile, between 0 and 100.
+     * @return - an upper bound of the latency of the stage at the percentile over all the players, in nanoseconds.
+     */
+    public long percentileNanos(Stage stage, double percentile) {
+        long[] histogram = new long[BUCKETS];
+        for (int player = 0; player < players; player++) {
+            long[] playerHistogram = histogram(player, stage);
+            for (int bucket = 0; bucket < BUCKETS; bucket++)
+                histogram[bucket] += playerHistogram[bucket];
+        }
+        return percentileNanos(histogram, percentile);
+    }
+
+    private static long percentileNanos(long[] histogram, double percentile) {
+        long samples = 0;
+        for (long count : histogram) samples += count;
+        if (samples == 0) return 0;
+        long rank = (long) Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= Math.max(rank, 1)) return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return - a summary of the median and 99th percentile of every stage, per player.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("input latency (p50/p99 in microseconds):");
+        for (int player = 0; player < players; player++) {
+            report.append(System.lineSeparator()).append("player ").append(player + 1).append(':');
+            for (Stage stage : STAGES)
+                report.append(' ').append(stage.name().toLowerCase()).append('=')
+                        .append(percentileNanos(player, stage, 50) / 1000).append('/')
+                        .append(percentileNanos(player, stage, 99) / 1000);
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Headless load generator: runs a game of computer players on the real dealer, table and player classes for a fixed
+ * duration and writes a JSON report of the throughput and latency of the engine, so builds can be compared.
+ * <p>
+ * Usage: LoadGenerator [Key=Value...], where the keys are the keys of config.properties (read first, if present) plus:
+ * Duration - the number of seconds to run (default 10), and Report - the file to write the report to (default: the
+ * standard output). For example: LoadGenerator ComputerPlayers=8 ComputerActionSeconds=0.001 Duration=30
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        Logger logger = Logger.getLogger("LoadGenerator");
+        logger.setUseParentHandlers(false);
+
+        Properties properties = Config.loadProperties("config.properties", logger);
+        // defaults for a headless run, which the arguments may override
+        properties.setProperty("Hints", "False");
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("RandomSpinMin", "0");
+        properties.setProperty("RandomSpinMax", "0");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException("expected Key=Value but got " + arg);
+            properties.setProperty(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        // the load is generated by computer players only, and the latencies are always traced
+        properties.setProperty("ComputerPlayers", Integer.toString(
+                Integer.parseInt(properties.getProperty("ComputerPlayers", "2"))
+                        + Integer.parseInt(properties.getProperty("HumanPlayers", "2"))));
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("LatencyTracing", "True");
+        long durationMillis = (long) (Double.parseDouble(properties.getProperty("Duration", "10")) * 1000.0);
+        String reportFile = properties.getProperty("Report", "");
+
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        LatencyTracer tracer = new LatencyTracer(config);
+        Env env = new Env(logger, config, new UserInterfaceDecorator(logger, util, null), util, tracer);
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = threads.isThreadCpuTimeSupported();
+        if (cpuTime) threads.setThreadCpuTimeEnabled(true);
+
+        GameLifecycle lifecycle = new GameLifecycle(logger, config.shutdownTimeoutMillis);
+        lifecycle.register("timer-wheel", env.timers::terminate);
+        long start = System.nanoTime();
+        Thread dealerThread = lifecycle.start("dealer", dealer, dealer::terminate);
+        Thread.sleep(durationMillis);
+
+        // sample everything while the game is still running
+        long elapsedNanos = System.nanoTime() - start;
+        long dealerCpuNanos = cpuTime ? threads.getThreadCpuTime(dealerThread.getId()) : -1;
+        long[] playerCpuNanos = new long[players.length];
+        long points = 0, penalties = 0;
+        for (int i = 0; i < players.length; i++) {
+            playerCpuNanos[i] = cpuTime ? cpuNanos(threads, players[i].getPlayerThread())
+                    + cpuNanos(threads, players[i].getAiThread()) : -1;
+            points += players[i].score();
+            penalties += players[i].penalties();
+        }
+
+        long shutdownStart = System.nanoTime();
+        int stragglers = lifecycle.shutdown().size() + dealer.lifecycle().stragglers().size();
+        long shutdownNanos = System.nanoTime() - shutdownStart;
+
+        double seconds = elapsedNanos / 1e9;
+        long claims = points + penalties;
+        StringBuilder report = new StringBuilder("{\n");
+        field(report, "players", players.length);
+        field(report, "tableSize", config.tableSize);
+        field(report, "deckSize", config.deckSize);
+        field(report, "computerActionMillis", config.computerActionMillis);
+        field(report, "durationSeconds", seconds);
+        field(report, "claims", claims);
+        field(report, "claimsPerSecond", claims / seconds);
+        field(report, "points", points);
+        field(report, "penalties", penalties);
+        field(report, "penaltyRatio", claims == 0 ? 0.0 : (double) penalties / claims);
+        field(report, "stalls", dealer.watchdog().stalls());
+        field(report, "shutdownMillis", shutdownNanos / 1_000_000);
+        field(report, "stragglers", stragglers);
+        report.append("  \"verdictLatencyMicros\": {");
+        double[] percentiles = {50, 90, 99};
+        for (int i = 0; i < percentiles.length; i++)
+            report.append(i == 0 ? "" : ", ").append("\"p").append((int) percentiles[i]).append("\": ")
+                    .append(tracer.percentileNanos(LatencyTracer.Stage.VERDICT, percentiles[i]) / 1000);
+        report.append("},\n");
+        field(report, "dealerUtilisation", dealerCpuNanos < 0 ? -1.0 : dealerCpuNanos / (double) elapsedNanos);
+        report.append("  \"playerCpuMillis\": [");
+        for (int i = 0; i < players.length; i++)
+            report.append(i == 0 ? "" : ", ").append(playerCpuNanos[i] < 0 ? -1 : playerCpuNanos[i] / 1_000_000);
+        report.append("]\n}\n");
+
+        // the lock profile is not part of the JSON report, so builds stay comparable whether or not it is enabled
+        if (table.lockProfiler().enabled()) System.err.println(table.lockProfiler().report());
+        if (reportFile.isEmpty()) System.out.print(report);
+        else try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(reportFile)), true, StandardCharsets.UTF_8.name())) {
+            out.print(report);
+        }
+    }
+
+    private static long cpuNanos(ThreadMXBean threads, Thread thread) {
+        if (thread == null) return 0;
+        return Math.max(threads.getThreadCpuTime(thread.getId()), 0);
+    }
+
+    private static void field(StringBuilder report, String name, long value) {
+        report.append("  \"").append(name).append("\": ").append(value).append(",\n");
+    }
+
+    private static void field(StringBuilder report, String name, double value) {
+        report.append("  \"").append(name).append("\": ").append(String.format(Locale.ROOT, "%.4f", value)).append(",\n");
+    }
+}
@@ -1,15 +1,20 @@
 package bguspl.set;
 
 import bguspl.set.ex.Dealer;
+import bguspl.set.ex.LeaderboardStore;
+import bguspl.set.ex.Lobby;
+import bguspl.set.ex.LobbyGames;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Properties;
 import java.util.logging.*;
 
 /**
@@ -19,6 +24,7 @@ public class Main {
 
     private static Dealer dealer;
     private static Thread mainThread;
+    private static GameLifecycle lifecycle;
 
     private static boolean xButtonPressed = false;
     private static Logger logger;
@@ -27,7 +33,10 @@ public class Main {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
         if (dealer != null) dealer.terminate();
-        mainThread.join();
+        // cut the wait for the dealer (or the end game pause) short: the shutdown itself is bounded
+        mainThread.interrupt();
+        // the game's threads get the shutdown timeout, and the reports and the leaderboard as much again
+        mainThread.join(lifecycle == null ? 0 : 2 * lifecycle.timeoutMillis());
     }
 
     /**
@@ -42,47 +51,94 @@ public class Main {
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
-        Config config = new Config(logger, "config.properties");
+        Properties properties = Config.loadProperties("config.properties", logger);
+        Config config = new Config(logger, properties);
         Util util = new UtilImpl(config);
+        LatencyTracer tracer = new LatencyTracer(config);
+        TimerWheel timers = new TimerWheel(logger, config);
+        lifecycle = new GameLifecycle(logger, config.shutdownTimeoutMillis);
+        lifecycle.register("timer-wheel", timers::terminate);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
-        try {
-            ui = new UserInterfaceSwing(logger, config, players);
+        if (config.terminalUi) ui = new UserInterfaceTerminal(logger, config, tracer);
+        else try {
+            ui = new UserInterfaceSwing(logger, config, players, tracer);
         } catch (UnsupportedOperationException | IllegalArgumentException e) {
             logger.severe("error creating swing user interface: " + e.getMessage());
-            logger.severe("will try to run without user interface");
+            if (System.console() != null) {
+                logger.severe("will try to run with a terminal user interface");
+                ui = new UserInterfaceTerminal(logger, config, tracer);
+            } else logger.severe("will try to run without user interface");
             if (config.humanPlayers > 0)
-                logger.severe("warning: running with human players with no user interface");
+                logger.severe("warning: running with human players with no keyboard input");
+        }
+        NetworkServer server = null;
+        if (config.networkPort > 0) try {
+            SpectatorFeed feed = new SpectatorFeed(config, ui);
+            // remote clients may also queue for games of their own, which are followed through their own feeds
+            Lobby lobby = new Lobby(config, new LobbyGames(logger, properties,
+                    gameConfig -> new SpectatorFeed(gameConfig, null), timers, lifecycle));
+            expireLobby(timers, lobby, Math.max(config.lobbyMaxWaitMillis / 10, 1));
+            server = new NetworkServer(logger, config, players, feed, lobby);
+            ui = feed;
+        } catch (IOException e) {
+            logger.severe("error creating network server: " + e.getMessage());
         }
         ui = new UserInterfaceDecorator(logger, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        Env env = new Env(logger, config, ui, util, tracer, timers);
+
+        LeaderboardStore leaderboard = null;
+        if (!config.leaderboardFile.isEmpty()) try {
+            leaderboard = new LeaderboardStore(Paths.get(config.leaderboardFile));
+        } catch (IOException e) {
+            logger.severe("error opening the leaderboard: " + e.getMessage());
+        }
 
         // create the game entities
         Table table = new Table(env);
-        dealer = new Dealer(env, table, players);
+        dealer = new Dealer(env, table, players, leaderboard);
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
+        // the clients' input goes to the players, so the network server only starts once they exist
+        if (server != null) lifecycle.start("network", server, server::terminate);
+
         // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-        dealerThread.startWithLog();
+        Thread dealerThread = lifecycle.start("dealer", dealer, dealer::terminate);
 
         try {
             // shutdown stuff
-            dealerThread.joinWithLog();
+            dealerThread.join();
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
+            // the dealer first (it stops the players), then the network server and the timer wheel
+            lifecycle.shutdown();
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            if (tracer.enabled()) logger.info(tracer.report());
+            if (table.lockProfiler().enabled()) logger.info(table.lockProfiler().report());
+            if (leaderboard != null) try {
+                leaderboard.close();
+            } catch (IOException e) {
+                logger.severe("error closing the leaderboard: " + e.getMessage());
+            }
             if (!xButtonPressed) env.ui.dispose();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
+    /**
+     * Matches the players that waited in the lobby for too long, every period, until the timer wheel stops.
+     */
+    private static void expireLobby(TimerWheel timers, Lobby lobby, long periodMillis) {
+        lobby.expire();
+        timers.schedule(periodMillis, () -> expireLobby(timers, lobby, periodMillis));
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
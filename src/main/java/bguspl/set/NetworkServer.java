@@ -0,0 +1,380 @@
+package bguspl.set;
+
+import bguspl.set.ex.Lobby;
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking TCP front-end for remote players and spectators.
+ * A single selector thread accepts the connections and reads the slot selections of the clients, which are dispatched
+ * to Player.keyPressed just like keyboard input. Every client reads the game updates from a shared spectator feed, at
+ * its own pace.
+ * <p>
+ * A client may instead queue in the lobby (if the server has one). Once the lobby matches it, the client controls its
+ * player in the new game and follows the game's own feed (if the game's user interface is a spectator feed).
+ * <p>
+ * Every frame is [length: short][type: byte][payload], the length counting the type and the payload.
+ */
+public class NetworkServer implements Runnable {
+
+    // client to server frames
+    public static final byte JOIN = 1;          // player: short
+    public static final byte SELECT = 2;        // slot: short
+    public static final byte QUEUE = 3;         // skill: short, players: short
+
+    // server to client frames
+    public static final byte JOINED = 10;       // player: short (-1 if the player cannot be joined)
+    public static final byte CARD = 11;         // slot: short, card: int (-1 if none)
+    public static final byte TOKEN = 12;        // player: short, slot: short, placed: byte
+    public static final byte CLEAR_TOKENS = 13; // slot: short (-1 for all slots)
+    public static final byte COUNTDOWN = 14;    // millies: long, warn: byte
+    public static final byte ELAPSED = 15;      // millies: long
+    public static final byte FREEZE = 16;       // player: short, millies: long
+    public static final byte SCORE = 17;        // player: short, score: int
+    public static final byte WINNERS = 18;      // count: short, players: short...
+    public static final byte STARTED = 19;      // player: short (the client's player in its lobby game)
+
+    /**
+     * The largest frame a client may send (type and payload).
+     */
+    private static final int MAX_CLIENT_FRAME = 5;
+
+    /**
+     * The largest game a client may queue for in the lobby.
+     */
+    private static final int MAX_LOBBY_GAME = 8;
+
+    /**
+     * The size of the buffer each client's output is staged in while it is being written.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 13;
+
+    private final Logger logger;
+    private final Config config;
+    private final Player[] players;
+    private final SpectatorFeed feed;
+
+    /**
+     * The lobby clients may queue in (null if none).
+     */
+    private final Lobby lobby;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The connected clients (used by the selector thread only).
+     */
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * The client controlling each player (guarded by this).
+     */
+    private final Connection[] playerConnections;
+
+    /**
+     * True iff the feed was updated since the selector thread last looked at it.
+     */
+    private final AtomicBoolean feedUpdated = new AtomicBoolean();
+
+    /**
+     * Wakes up the selector thread when a feed is updated.
+     */
+    private final Runnable feedListener;
+
+    /**
+     * The lobby games that started since the selector thread last looked (the lobby starts them on any thread).
+     */
+    private final ConcurrentLinkedQueue<Runnable> lobbyStarts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of clients that queued in the lobby (used to name them).
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private volatile boolean terminate;
+
+    public NetworkServer(Logger logger, Config config, Player[] players, SpectatorFeed feed) throws IOException {
+        this(logger, config, players, feed, null);
+    }
+
+    public NetworkServer(Logger logger, Config config, Player[] players, SpectatorFeed feed, Lobby lobby)
+            throws IOException {
+        this(logger, config, players, feed, lobby, config.networkPort);
+    }
+
+    NetworkServer(Logger logger, Config config, Player[] players, SpectatorFeed feed, Lobby lobby, int port)
+            throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        this.feed = feed;
+        this.lobby = lobby;
+
+        playerConnections = new Connection[config.players];
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        logger.info("network server listening on port " + port());
+
+        // the game threads only flag the update, waking up the selector at most once per pass
+        feedListener = () -> {
+            if (feedUpdated.compareAndSet(false, true)) selector.wakeup();
+        };
+        feed.setListener(feedListener);
+    }
+
+    /**
+     * @return - the port the server listens on.
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the selector thread and disconnects all the clients.
+     */
+    public void terminate() {
+        terminate = true;
+        selector.wakeup();
+    }
+
+    /**
+     * The selector thread starts here.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!terminate) {
+                for (Runnable start; (start = lobbyStarts.poll()) != null; ) start.run();
+                if (feedUpdated.getAndSet(false))
+                    for (Connection connection : connections)
+                        if (connection.key.isValid()) connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) connection.read();
+                            if (key.isValid() && key.isWritable()) connection.write();
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            // a bug in serving one client must not take the whole front end down
+                            logger.severe("closing network connection: " + e);
+                            connection.close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("network server failed: " + e.getMessage());
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) connection.close();
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        // the reader starts with a snapshot of the game, so the client can follow the updates from then on
+        connections.add(new Connection(channel));
+    }
+
+    /**
+     * Dispatches a frame received from a client.
+     */
+    private void handle(Connection connection, byte type, ByteBuffer payload) {
+        if (type == JOIN && payload.remaining() >= 2) {
+            int player = payload.getShort();
+            synchronized (this) {
+                boolean free = connection.player == -1 && connection.ticket == null && connection.game == null
+                        && player >= 0 && player < playerConnections.length && playerConnections[player] == null;
+                if (free) {
+                    playerConnections[player] = connection;
+                    connection.player = player;
+                    logger.info("remote client joined as player " + (player + 1));
+                }
+                connection.reply(JOINED, (short) (free ? player : -1));
+            }
+        } else if (type == QUEUE && payload.remaining() >= 4) {
+            int skill = payload.getShort();
+            int size = payload.getShort();
+            boolean joined;
+            synchronized (this) {
+                joined = connection.player != -1;
+            }
+            if (lobby == null || joined || connection.ticket != null || connection.game != null || size < 1
+                    || size > MAX_LOBBY_GAME) {
+                connection.reply(STARTED, (short) -1);
+                return;
+            }
+            connection.ticket = lobby.enqueue("Remote " + queued.incrementAndGet(), skill, size, (player, ui) -> {
+                lobbyStarts.add(() -> connection.start(player, ui));
+                selector.wakeup();
+            });
+        } else if (type == SELECT && payload.remaining() >= 2) {
+            int slot = payload.getShort();
+            if (slot < 0 || slot >= config.tableSize) return;
+            if (connection.game != null) connection.game.keyPressed(slot);
+            else if (connection.player >= 0) players[connection.player].keyPressed(slot);
+        }
+    }
+
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private SpectatorFeed.Reader reader;
+
+        /**
+         * The bytes read from the client that do not form a complete frame yet.
+         */
+        private final ByteBuffer in = ByteBuffer.allocate(2 + MAX_CLIENT_FRAME);
+
+        /**
+         * The bytes staged for writing to the client (allocated on first use, released once drained).
+         */
+        private ByteBuffer out;
+
+        /**
+         * Frames sent to this client only (e.g. replies), written before the feed (allocated on first use).
+         */
+        private ByteBuffer replies;
+
+        /**
+         * The player controlled by the client (-1 if none).
+         */
+        private int player = -1;
+
+        /**
+         * The lobby ticket of the client while it is queued (null if none).
+         */
+        private Lobby.Ticket ticket;
+
+        /**
+         * The player controlled by the client in its lobby game (null if none).
+         */
+        private Player game;
+
+        private Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.reader = feed.newReader();
+            this.key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, this);
+        }
+
+        /**
+         * Hands the client its player in the lobby game that started (called on the selector thread).
+         */
+        private void start(Player player, UserInterface ui) {
+            if (!connections.contains(this)) return; // the client left, the player stays without input
+            ticket = null;
+            game = player;
+            if (ui instanceof SpectatorFeed) {
+                SpectatorFeed gameFeed = (SpectatorFeed) ui;
+                gameFeed.setListener(feedListener);
+                // the staged output holds whole frames only, the game's updates follow them
+                reader = gameFeed.newReader();
+            }
+            reply(STARTED, (short) player.id);
+        }
+
+        private void reply(byte type, short value) {
+            if (replies == null) replies = ByteBuffer.allocate(2 + MAX_CLIENT_FRAME);
+            if (replies.remaining() < 5) return; // at most one reply is pending for a well behaved client
+            replies.putShort((short) 3).put(type).putShort(value);
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        private void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= 2) {
+                int length = in.getShort(in.position()) & 0xFFFF;
+                if (length == 0 || length > MAX_CLIENT_FRAME) {
+                    logger.severe("closing network connection: malformed frame");
+                    close();
+                    return;
+                }
+                if (in.remaining() < 2 + length) break;
+                in.position(in.position() + 2);
+                ByteBuffer payload = in.slice();
+                payload.limit(length);
+                byte type = payload.get();
+                handle(this, type, payload);
+                in.position(in.position() + length);
+            }
+            in.compact();
+        }
+
+        private void write() throws IOException {
+            while (true) {
+                if (out == null || !out.hasRemaining()) {
+                    if (out == null) out = ByteBuffer.allocate(Math.max(OUTPUT_BUFFER_SIZE, feed.maxFrame()));
+                    out.clear();
+                    if (replies != null && replies.position() > 0) {
+                        replies.flip();
+                        out.put(replies);
+                        replies.clear();
+                    }
+                    reader.read(out);
+                    out.flip();
+                    if (!out.hasRemaining()) {
+                        // nothing left to send: release the buffer and wait for the next update
+                        out = null;
+                        key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                }
+                channel.write(out);
+                if (out.hasRemaining()) return; // the socket is full, continue when it is writable again
+            }
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            connections.remove(this);
+            if (ticket != null) lobby.cancel(ticket);
+            synchronized (NetworkServer.this) {
+                if (player >= 0 && playerConnections[player] == this) {
+                    playerConnections[player] = null;
+                    logger.info("remote player " + (player + 1) + " disconnected");
+                }
+            }
+        }
+    }
+}
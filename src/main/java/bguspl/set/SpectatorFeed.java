@@ -0,0 +1,391 @@
+package bguspl.set;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fans the user interface updates out to any number of spectators.
+ * Every update is forwarded to the wrapped user interface (if any), then encoded once into a binary frame (see
+ * NetworkServer for the format) published to a shared ring. Each spectator reads the ring through its own Reader, at
+ * its own pace; a reader that falls more than the ring's capacity behind is resynced from a snapshot of the game state
+ * instead of having its updates buffered.
+ * <p>
+ * Nothing on the game threads' path takes a lock: a writer reserves the sequence number of its frame with a single
+ * atomic increment and publishes the (immutable) frame in the ring slot of that number, with a compare-and-set that
+ * never replaces a frame of a larger number. A reader knows a slot holds
+ * the frame it expects by its sequence number, that the frame was not published yet by a smaller one, and that it was
+ * overwritten (i.e. the reader fell behind) by a larger one.
+ */
+public class SpectatorFeed implements UserInterface {
+
+    /**
+     * The typical size of a frame (a card or a token update), used to size the ring from its capacity in bytes.
+     */
+    private static final int TYPICAL_FRAME = 8;
+
+    /**
+     * A published frame.
+     */
+    private static final class Frame {
+
+        private final long sequence;
+        private final byte[] bytes;
+
+        private Frame(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The largest frame the feed encodes (a winner announcement of all the players).
+     */
+    private final int maxFrame;
+
+    private final Config config;
+    private final UserInterface ui;
+
+    /**
+     * The ring of frames: the frame of sequence number s is in slot s & mask (until a later frame overwrites it).
+     */
+    private final AtomicReferenceArray<Frame> ring;
+    private final int mask;
+
+    /**
+     * The sequence number of the next frame.
+     */
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * The state of the game, used for snapshots. A writer updates it before it reserves the sequence number of its
+     * frame, so a snapshot taken at a sequence number includes every frame before it (and maybe some after it, which
+     * the frames replayed after the snapshot set again).
+     */
+    private final AtomicIntegerArray cards;
+    private final int maskWords;
+    private final AtomicLongArray tokenMasks;
+    private final AtomicIntegerArray scores;
+    private final AtomicLongArray freezes;
+    private volatile byte[] timer;
+    private volatile byte[] winners;
+
+    /**
+     * Called after every update (e.g. to wake up the threads sending the updates to the spectators).
+     */
+    private volatile Runnable listener = () -> {};
+
+    /**
+     * The number of times a reader was resynced from a snapshot.
+     */
+    private final AtomicLong resyncs = new AtomicLong();
+
+    public SpectatorFeed(Config config, UserInterface ui) {
+        this.config = config;
+        this.ui = ui;
+
+        int capacity = Integer.highestOneBit(Math.max(config.spectatorBufferBytes / TYPICAL_FRAME, 128) - 1) << 1;
+        ring = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        maxFrame = 3 + 2 + 2 * config.players;
+
+        cards = new AtomicIntegerArray(config.tableSize);
+        for (int slot = 0; slot < config.tableSize; slot++) cards.set(slot, -1);
+        maskWords = (config.players + Long.SIZE - 1) / Long.SIZE;
+        tokenMasks = new AtomicLongArray(config.tableSize * maskWords);
+        scores = new AtomicIntegerArray(config.players);
+        freezes = new AtomicLongArray(config.players);
+    }
+
+    /**
+     * @return - the size of the largest frame (a reader needs at least this much room to make progress).
+     */
+    public int maxFrame() {
+        return maxFrame;
+    }
+
+    /**
+     * @return - the number of frames the ring holds.
+     */
+    int capacity() {
+        return ring.length();
+    }
+
+    /**
+     * Sets the listener called after every update.
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return - a new reader, starting with a snapshot of the current state.
+     */
+    public Reader newReader() {
+        return new Reader();
+    }
+
+    /**
+     * @return - the number of times a reader fell behind and was resynced from a snapshot.
+     */
+    public long resyncs() {
+        return resyncs.get();
+    }
+
+    /**
+     * A spectator's position in the feed. A reader must only be used by one thread at a time.
+     */
+    public class Reader {
+
+        /**
+         * The sequence number of the next frame to read.
+         */
+        private long position;
+        private ByteBuffer pending;
+
+        private Reader() {
+            resync();
+        }
+
+        private void resync() {
+            position = reserved.get();
+            pending = snapshot();
+        }
+
+        /**
+         * @return - true iff there are updates this reader did not read yet.
+         */
+        public boolean hasMore() {
+            if (pending != null && pending.hasRemaining()) return true;
+            Frame frame = ring.get((int) (position & mask));
+            return frame != null && frame.sequence >= position;
+        }
+
+        /**
+         * Copies as many whole frames as fit into a buffer.
+         *
+         * @param dst - the buffer to copy the frames into.
+         */
+        public void read(ByteBuffer dst) {
+            while (true) {
+                Frame frame = ring.get((int) (position & mask));
+                if (frame != null && frame.sequence > position) {
+                    // overwritten: the frames since the position (and any snapshot not read yet) are replaced by a
+                    // new snapshot
+                    resyncs.incrementAndGet();
+                    resync();
+                    continue;
+                }
+                if (pending != null) {
+                    while (pending.hasRemaining()) {
+                        int length = 2 + (pending.getShort(pending.position()) & 0xFFFF);
+                        if (dst.remaining() < length) return;
+                        ByteBuffer snapshotFrame = pending.duplicate();
+                        snapshotFrame.limit(snapshotFrame.position() + length);
+                        dst.put(snapshotFrame);
+                        pending.position(pending.position() + length);
+                    }
+                    pending = null;
+                }
+                // not published yet
+                if (frame == null || frame.sequence < position) return;
+                if (dst.remaining() < frame.bytes.length) return;
+                dst.put(frame.bytes);
+                ++position;
+            }
+        }
+    }
+
+    /**
+     * Encodes the current state of the game as a sequence of frames.
+     */
+    private ByteBuffer snapshot() {
+        byte[] timer = this.timer, winners = this.winners;
+        ByteBuffer snapshot = ByteBuffer.allocate(cards.length() * 9 + cards.length() * config.players * 8
+                + config.players * 22 + (timer == null ? 0 : timer.length) + (winners == null ? 0 : winners.length));
+        for (int slot = 0; slot < cards.length(); slot++) {
+            int card = cards.get(slot);
+            if (card != -1) snapshot.putShort((short) 7).put(NetworkServer.CARD).putShort((short) slot).putInt(card);
+            for (int word = 0; word < maskWords; word++)
+                for (long bits = tokenMasks.get(slot * maskWords + word); bits != 0; bits &= bits - 1)
+                    snapshot.putShort((short) 6).put(NetworkServer.TOKEN)
+                            .putShort((short) (word * Long.SIZE + Long.numberOfTrailingZeros(bits))).putShort((short) slot).put((byte) 1);
+        }
+        for (int player = 0; player < scores.length(); player++) {
+            snapshot.putShort((short) 7).put(NetworkServer.SCORE).putShort((short) player).putInt(scores.get(player));
+            long freeze = freezes.get(player);
+            if (freeze > 0)
+                snapshot.putShort((short) 11).put(NetworkServer.FREEZE).putShort((short) player).putLong(freeze);
+        }
+        if (timer != null) snapshot.put(timer);
+        // a spectator joining after the game ended still sees its result
+        if (winners != null) snapshot.put(winners);
+        snapshot.flip();
+        return snapshot;
+    }
+
+    /**
+     * @return - a buffer holding the header of a new frame.
+     */
+    private static ByteBuffer begin(byte type, int payload) {
+        return ByteBuffer.allocate(3 + payload).putShort((short) (1 + payload)).put(type);
+    }
+
+    /**
+     * Publishes a frame to the ring.
+     */
+    private void publish(ByteBuffer frame) {
+        publish(reserve(), frame.array());
+    }
+
+    /**
+     * @return - the sequence number of the next frame.
+     */
+    long reserve() {
+        return reserved.getAndIncrement();
+    }
+
+    /**
+     * Publishes a frame in the ring slot of its sequence number, unless a writer that reserved a larger one already
+     * published there (the writer of this frame stalled for a whole lap of the ring). The frame is then dropped: a
+     * reader expecting it finds the larger sequence number and resyncs, while putting it back would hide the newer
+     * frame and leave the readers waiting for it forever.
+     *
+     * @param sequence - the sequence number reserved for the frame.
+     * @param bytes    - the frame.
+     */
+    void publish(long sequence, byte[] bytes) {
+        int index = (int) (sequence & mask);
+        Frame frame = new Frame(sequence, bytes);
+        for (Frame current = ring.get(index); current == null || current.sequence < sequence; current = ring.get(index))
+            if (ring.compareAndSet(index, current, frame)) return;
+    }
+
+    private void setCard(int slot, int card) {
+        cards.set(slot, card);
+        publish(begin(NetworkServer.CARD, 6).putShort((short) slot).putInt(card));
+    }
+
+    private void clearTokens(int slot) {
+        for (int word = 0; word < maskWords; word++) tokenMasks.set(slot * maskWords + word, 0L);
+        publish(begin(NetworkServer.CLEAR_TOKENS, 2).putShort((short) slot));
+    }
+
+    private void setToken(int player, int slot, boolean placed) {
+        int index = slot * maskWords + player / Long.SIZE;
+        long bit = 1L << player;
+        tokenMasks.getAndUpdate(index, bits -> placed ? bits | bit : bits & ~bit);
+        publish(begin(NetworkServer.TOKEN, 5).putShort((short) player).putShort((short) slot).put((byte) (placed ? 1 : 0)));
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        if (ui != null) ui.placeCard(card, slot);
+        setCard(slot, card);
+        listener.run();
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        if (ui != null) ui.removeCard(slot);
+        setCard(slot, -1);
+        listener.run();
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        if (ui != null) ui.placeCards(cards, slots);
+        for (int i = 0; i < slots.length; i++) setCard(slots[i], cards[i]);
+        listener.run();
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        if (ui != null) ui.removeCards(slots);
+        for (int slot : slots) {
+            clearTokens(slot);
+            setCard(slot, -1);
+        }
+        listener.run();
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        if (ui != null) ui.placeToken(player, slot);
+        setToken(player, slot, true);
+        listener.run();
+    }
+
+    @Override
+    public void removeTokens() {
+        if (ui != null) ui.removeTokens();
+        for (int i = 0; i < tokenMasks.length(); i++) tokenMasks.set(i, 0L);
+        publish(begin(NetworkServer.CLEAR_TOKENS, 2).putShort((short) -1));
+        listener.run();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        if (ui != null) ui.removeTokens(slot);
+        clearTokens(slot);
+        listener.run();
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        if (ui != null) ui.removeToken(player, slot);
+        setToken(player, slot, false);
+        listener.run();
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        if (ui != null) ui.setCountdown(millies, warn);
+        ByteBuffer frame = begin(NetworkServer.COUNTDOWN, 9).putLong(millies).put((byte) (warn ? 1 : 0));
+        timer = frame.array();
+        publish(frame);
+        listener.run();
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        if (ui != null) ui.setElapsed(millies);
+        ByteBuffer frame = begin(NetworkServer.ELAPSED, 8).putLong(millies);
+        timer = frame.array();
+        publish(frame);
+        listener.run();
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        if (ui != null) ui.setFreeze(player, millies);
+        freezes.set(player, millies);
+        publish(begin(NetworkServer.FREEZE, 10).putShort((short) player).putLong(millies));
+        listener.run();
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        if (ui != null) ui.setScore(player, score);
+        scores.set(player, score);
+        publish(begin(NetworkServer.SCORE, 6).putShort((short) player).putInt(score));
+        listener.run();
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        if (ui != null) ui.announceWinner(players);
+        ByteBuffer frame = begin(NetworkServer.WINNERS, 2 + 2 * players.length).putShort((short) players.length);
+        for (int player : players) frame.putShort((short) player);
+        winners = frame.array();
+        publish(frame);
+        listener.run();
+    }
+
+    @Override
+    public void dispose() {
+        if (ui != null) ui.dispose();
+    }
+}
@@ -0,0 +1,163 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Hashed wheel timer shared by everything in a game (or by many games) that needs to happen at a later time:
+ * countdown ticks, freeze expiry and card animations.
+ * A single daemon thread advances the wheel once per tick and runs the tasks whose deadline passed, so scheduling a
+ * task costs a queue insertion instead of a sleeping thread. Tasks must be short, as they run on the wheel thread.
+ * Tasks scheduled for the same tick run in the order they were scheduled in.
+ */
+public class TimerWheel {
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+
+        private final long deadline;
+        private final Runnable task;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Cancels the task (it has no effect if the task already ran).
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * The tasks whose deadlines fall on the same slot of the wheel.
+     */
+    private static final class Bucket {
+
+        private final List<Timeout> timeouts = new ArrayList<>();
+    }
+
+    private final Logger logger;
+    private final long tickNanos;
+
+    /**
+     * The buckets of the wheel (used by the wheel thread only).
+     */
+    private final Bucket[] wheel;
+    private final int mask;
+
+    /**
+     * The tasks scheduled since the wheel thread last looked (it moves them to their buckets on every tick).
+     */
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    private final long start = System.nanoTime();
+    private long tick;
+
+    private Thread thread;
+    private volatile boolean terminate;
+
+    public TimerWheel(Logger logger, Config config) {
+        this(logger, config.timerTickMillis, 512);
+    }
+
+    TimerWheel(Logger logger, long tickMillis, int buckets) {
+        this.logger = logger;
+        this.tickNanos = Math.max(tickMillis, 1) * 1_000_000L;
+        int size = Integer.highestOneBit(Math.max(buckets, 2) - 1) << 1;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+        mask = size - 1;
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param delayMillis - the number of milliseconds to run the task after (rounded up to the next tick).
+     * @param task        - the task.
+     * @return - the timeout of the task, which can be used to cancel it.
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        Timeout timeout = new Timeout(System.nanoTime() + Math.max(delayMillis, 0) * 1_000_000L, task);
+        pending.add(timeout);
+        start();
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel thread (the tasks that did not run yet never will).
+     */
+    public void terminate() {
+        terminate = true;
+        synchronized (this) {
+            if (thread != null) thread.interrupt();
+        }
+    }
+
+    private synchronized void start() {
+        if (thread != null || terminate) return;
+        thread = new Thread(this::run, "timer-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        ThreadLogger.logStart(logger, Thread.currentThread().getName());
+        while (!terminate) {
+            long next = start + (tick + 1) * tickNanos;
+            long sleepNanos = next - System.nanoTime();
+            if (sleepNanos > 0) try {
+                Thread.sleep(sleepNanos / 1_000_000L, (int) (sleepNanos % 1_000_000L));
+            } catch (InterruptedException ignored) {
+                continue;
+            }
+            transferPending();
+            expire(wheel[(int) (tick & mask)]);
+            ++tick;
+        }
+        ThreadLogger.logStop(logger, Thread.currentThread().getName());
+    }
+
+    /**
+     * Moves the scheduled tasks to the buckets of their deadlines.
+     */
+    private void transferPending() {
+        for (Timeout timeout; (timeout = pending.poll()) != null; ) {
+            if (timeout.cancelled) continue;
+            long ticks = Math.max((timeout.deadline - start + tickNanos - 1) / tickNanos - 1, tick);
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].timeouts.add(timeout);
+        }
+    }
+
+    /**
+     * Runs the tasks of the current bucket that are due in this round.
+     */
+    private void expire(Bucket wheelBucket) {
+        List<Timeout> bucket = wheelBucket.timeouts;
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.cancelled) continue;
+            if (timeout.rounds > 0) {
+                --timeout.rounds;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                logger.severe("timer task failed: " + e);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+}
@@ -18,6 +18,26 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw a number of cards at once (e.g. when the dealer deals the table).
+     * @param cards - the card ids.
+     * @param slots - the slot of each card.
+     */
+    default void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < slots.length; i++) placeCard(cards[i], slots[i]);
+    }
+
+    /**
+     * Draw empty card images, without player names, in a number of slots at once.
+     * @param slots - the slot numbers.
+     */
+    default void removeCards(int[] slots) {
+        for (int slot : slots) {
+            removeTokens(slot);
+            removeCard(slot);
+        }
+    }
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
@@ -4,6 +4,7 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.FileNotFoundException;
 import java.net.URL;
 import java.util.Arrays;
@@ -23,14 +24,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final LatencyTracer tracer;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(Logger logger, Config config, Player[] players, LatencyTracer tracer) {
 
         this.config = config;
+        this.tracer = tracer;
         timerPanel = new TimerPanel();
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
@@ -63,9 +66,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        // the keyboard is only needed when some player uses it
+        if (config.humanPlayers > 0) addKeyListener(new InputManager(logger, config, players));
         addWindowListener(new WindowManager());
 
+        tracer.paintsReported();
         EventQueue.invokeLater(() -> setVisible(true));
     }
 
@@ -105,8 +110,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private final Image emptyCard;
         private final Image[] deck;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
-        private final JLabel[][] tokenText;
+
+        /**
+         * Per slot bitmask of the players that have a token on it (bit p of word p / 64 is player p).
+         */
+        private final long[][] tokenMasks;
+
+        /**
+         * Pre-rendered name strip of each player, painted as the token overlay.
+         */
+        private final BufferedImage[] tokenGlyphs;
 
         private Image loadImageResource(String filename) {
             URL imageResource = getClass().getClassLoader().getResource(filename);
@@ -115,6 +128,22 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             return new ImageIcon(imageResource).getImage();
         }
 
+        private BufferedImage renderGlyphStrip(String name, Font font) {
+            BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D measure = scratch.createGraphics();
+            FontMetrics metrics = measure.getFontMetrics(font);
+            measure.dispose();
+
+            BufferedImage strip = new BufferedImage(Math.max(1, metrics.stringWidth(name)), metrics.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = strip.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(font);
+            g.setColor(Color.BLACK);
+            g.drawString(name, 0, metrics.getAscent());
+            g.dispose();
+            return strip;
+        }
+
         private GamePanel() {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
@@ -128,87 +157,98 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                 deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
             emptyCard = loadImageResource("cards/empty_card.png");
 
+            // init the cards on the table grid as empty cards
             grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
-            for (int row = 0; row < config.rows; row++) {
-                for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
-                    // init the JLabel selection overlay
-                    tokenText[row][column] = new JLabel("");
-                    tokenText[row][column].setVerticalAlignment(JLabel.TOP);
-                    tokenText[row][column].setHorizontalAlignment(JLabel.CENTER);
-                    tokenText[row][column].setOpaque(false);
-                    tokenText[row][column].setBorder(BorderFactory.createLineBorder(Color.black));
-                    tokenText[row][column].setBounds((column * config.cellWidth), (row * config.cellHeight), config.cellWidth, config.cellHeight);
-                    add(tokenText[row][column]);
-                }
-            }
+            for (Image[] row : grid)
+                Arrays.fill(row, emptyCard);
+
+            // init the token overlays: no tokens, one name strip per player
+            tokenMasks = new long[config.tableSize][(config.players + Long.SIZE - 1) / Long.SIZE];
+            tokenGlyphs = new BufferedImage[config.players];
+            Font font = UIManager.getFont("Label.font");
+            if (font == null) font = new Font("Dialog", Font.PLAIN, 12);
+            for (int player = 0; player < config.players; player++)
+                tokenGlyphs[player] = renderGlyphStrip(config.playerNames[player], font);
         }
 
         private void placeCard(int slot, int card) {
             int row = slot / config.columns;
             int column = slot % config.columns;
             grid[row][column] = deck[card];
-            validate();
-            repaint();
+            repaintSlot(slot);
         }
 
         private void removeCard(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
             grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            repaintSlot(slot);
         }
 
         private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            synchronized (tokenMasks) {
+                tokenMasks[slot][player / Long.SIZE] |= 1L << player;
+            }
+            repaintSlot(slot);
         }
 
         private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
+            synchronized (tokenMasks) {
+                for (long[] mask : tokenMasks)
+                    Arrays.fill(mask, 0L);
+            }
+            repaint();
         }
 
         private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            synchronized (tokenMasks) {
+                Arrays.fill(tokenMasks[slot], 0L);
             }
+            repaintSlot(slot);
         }
 
         private void removeToken(int player, int slot) {
+            synchronized (tokenMasks) {
+                tokenMasks[slot][player / Long.SIZE] &= ~(1L << player);
+            }
+            repaintSlot(slot);
+        }
+
+        private void repaintSlot(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+        private void paintTokens(Graphics g, int slot, int x, int y) {
+            int line = y;
+            synchronized (tokenMasks) {
+                long[] mask = tokenMasks[slot];
+                for (int word = 0; word < mask.length; word++)
+                    for (long bits = mask[word]; bits != 0; bits &= bits - 1) {
+                        BufferedImage glyph = tokenGlyphs[word * Long.SIZE + Long.numberOfTrailingZeros(bits)];
+                        g.drawImage(glyph, x + (config.cellWidth - glyph.getWidth()) / 2, line, null);
+                        line += glyph.getHeight();
+                    }
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
+            // draw card images, then the cell borders and token overlays on top of them
+            long started = System.nanoTime();
+            Rectangle clip = g.getClipBounds();
+            g.setColor(Color.BLACK);
             for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+                for (int column = 0; column < config.columns; column++) {
+                    int x = column * config.cellWidth;
+                    int y = row * config.cellHeight;
+                    if (clip != null && !clip.intersects(x, y, config.cellWidth, config.cellHeight)) continue;
+                    g.drawImage(grid[row][column], x, y, this);
+                    g.drawRect(x, y, config.cellWidth - 1, config.cellHeight - 1);
+                    paintTokens(g, row * config.columns + column, x, y);
+                }
+            tracer.painted(started);
         }
     }
 
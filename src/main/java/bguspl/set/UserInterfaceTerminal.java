@@ -0,0 +1,261 @@
+package bguspl.set;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * ANSI terminal implementation of the UserInterface interface.
+ * The game threads only update a screen model; a refresh thread periodically compares it with what is already on
+ * the terminal and writes the escape sequences needed to redraw the cells that differ.
+ */
+public class UserInterfaceTerminal implements UserInterface {
+
+    private static final String ESC = "\u001b[";
+    private static final byte PLAIN = 0;
+    private static final byte BOLD = 1;
+    private static final byte RED = 2;
+
+    private final Logger logger;
+    private final Config config;
+    private final PrintStream out;
+    private final LatencyTracer tracer;
+
+    /**
+     * Screen geometry: a timer line, three lines per grid row and one line per player.
+     */
+    private final int width;
+    private final int height;
+    private final int cellWidth;
+    private final int gridTop;
+    private final int playersTop;
+    private final int winnerLine;
+
+    /**
+     * The screen model written by the game threads and the screen as it was last written to the terminal.
+     */
+    private final char[] screen;
+    private final byte[] attributes;
+    private final char[] shown;
+    private final byte[] shownAttributes;
+
+    /**
+     * Per slot bitmask of the players that have a token on it (bit p of word p / 64 is player p).
+     */
+    private final long[][] tokenMasks;
+    private final int[] scores;
+    private final long[] freezes;
+
+    private final StringBuilder output = new StringBuilder();
+    private final Thread refreshThread;
+    private volatile boolean disposed;
+
+    public UserInterfaceTerminal(Logger logger, Config config, LatencyTracer tracer) {
+        this(logger, config, tracer, System.out);
+    }
+
+    public UserInterfaceTerminal(Logger logger, Config config, LatencyTracer tracer, PrintStream out) {
+        this.logger = logger;
+        this.config = config;
+        this.tracer = tracer;
+        this.out = out;
+
+        int tokensWidth = Math.min(2 * config.players, 24);
+        cellWidth = Math.max(config.featureCount + 4, tokensWidth + 2);
+        gridTop = 2;
+        playersTop = gridTop + 3 * config.rows + 1;
+        winnerLine = playersTop + config.players + 1;
+        width = Math.max(cellWidth * config.columns, 40);
+        height = winnerLine + 1;
+
+        screen = new char[width * height];
+        attributes = new byte[width * height];
+        shown = new char[width * height];
+        shownAttributes = new byte[width * height];
+        Arrays.fill(screen, ' ');
+        Arrays.fill(shown, ' ');
+
+        tokenMasks = new long[config.tableSize][(config.players + Long.SIZE - 1) / Long.SIZE];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+
+        synchronized (this) {
+            write(0, 0, width, config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...", BOLD);
+            for (int slot = 0; slot < config.tableSize; slot++)
+                drawSlot(slot, null);
+            for (int player = 0; player < config.players; player++)
+                drawPlayer(player);
+        }
+
+        out.print(ESC + "2J" + ESC + "?25l");
+        out.flush();
+        tracer.paintsReported();
+        refreshThread = new Thread(this::refreshLoop, "terminal-ui");
+        refreshThread.setDaemon(true);
+        refreshThread.start();
+    }
+
+    private void refreshLoop() {
+        ThreadLogger.logStart(logger, Thread.currentThread().getName());
+        while (!disposed) {
+            refresh();
+            try {
+                Thread.sleep(config.terminalRefreshMillis);
+            } catch (InterruptedException ignored) {}
+        }
+        refresh();
+        ThreadLogger.logStop(logger, Thread.currentThread().getName());
+    }
+
+    /**
+     * Writes the cells that changed since the last refresh to the terminal.
+     */
+    private void refresh() {
+        output.setLength(0);
+        // whatever was dispatched before the screen model is copied is on the terminal after this refresh
+        long started = System.nanoTime();
+        synchronized (this) {
+            int cursor = -1;
+            byte attribute = -1;
+            for (int i = 0; i < screen.length; i++) {
+                if (screen[i] == shown[i] && attributes[i] == shownAttributes[i]) continue;
+                if (i != cursor) output.append(ESC).append(i / width + 1).append(';').append(i % width + 1).append('H');
+                if (attributes[i] != attribute) {
+                    attribute = attributes[i];
+                    output.append(ESC).append(attribute == BOLD ? "0;1m" : attribute == RED ? "0;31m" : "0m");
+                }
+                output.append(screen[i]);
+                shown[i] = screen[i];
+                shownAttributes[i] = attributes[i];
+                cursor = i + 1;
+            }
+        }
+        if (output.length() > 0) {
+            output.append(ESC).append("0m").append(ESC).append(height + 1).append(";1H");
+            out.print(output);
+            out.flush();
+        }
+        tracer.painted(started);
+    }
+
+    /**
+     * Writes text to the screen model, padding (or truncating) it to the given field width.
+     */
+    private void write(int line, int column, int fieldWidth, String text, byte attribute) {
+        int start = line * width + column;
+        for (int i = 0; i < fieldWidth && column + i < width; i++) {
+            screen[start + i] = i < text.length() ? text.charAt(i) : ' ';
+            attributes[start + i] = attribute;
+        }
+    }
+
+    private void drawSlot(int slot, String card) {
+        int line = gridTop + 3 * (slot / config.columns);
+        int column = (slot % config.columns) * cellWidth;
+        write(line, column, cellWidth, card == null ? " [" + repeat('-', config.featureCount) + "]" : " [" + card + "]", PLAIN);
+        drawTokens(slot);
+    }
+
+    private void drawTokens(int slot) {
+        StringBuilder text = new StringBuilder(" ");
+        long[] mask = tokenMasks[slot];
+        for (int word = 0; word < mask.length; word++)
+            for (long bits = mask[word]; bits != 0; bits &= bits - 1)
+                text.append(word * Long.SIZE + Long.numberOfTrailingZeros(bits) + 1).append(' ');
+        int line = gridTop + 3 * (slot / config.columns) + 1;
+        write(line, (slot % config.columns) * cellWidth, cellWidth, text.toString(), BOLD);
+    }
+
+    private void drawPlayer(int player) {
+        String text = format("%-20s %5d", config.playerNames[player], scores[player]);
+        if (freezes[player] > 0) text += " (" + freezes[player] / 1000 + ")";
+        write(playersTop + player, 0, width, text, freezes[player] > 0 ? RED : PLAIN);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Override
+    public synchronized void placeCard(int card, int slot) {
+        drawSlot(slot, UserInterfaceSwing.intInBaseToPaddedString(card, config.featureCount, config.featureSize));
+    }
+
+    @Override
+    public synchronized void removeCard(int slot) {
+        drawSlot(slot, null);
+    }
+
+    @Override
+    public synchronized void placeToken(int player, int slot) {
+        tokenMasks[slot][player / Long.SIZE] |= 1L << player;
+        drawTokens(slot);
+    }
+
+    @Override
+    public synchronized void removeTokens() {
+        for (int slot = 0; slot < tokenMasks.length; slot++)
+            removeTokens(slot);
+    }
+
+    @Override
+    public synchronized void removeTokens(int slot) {
+        Arrays.fill(tokenMasks[slot], 0L);
+        drawTokens(slot);
+    }
+
+    @Override
+    public synchronized void removeToken(int player, int slot) {
+        tokenMasks[slot][player / Long.SIZE] &= ~(1L << player);
+        drawTokens(slot);
+    }
+
+    @Override
+    public synchronized void setCountdown(long millies, boolean warn) {
+        String text = warn ? format("Remaining Time: %.2f", (double) millies / 1000.0f) : format("Remaining Time: %d", millies / 1000L);
+        write(0, 0, width, text, warn ? RED : BOLD);
+    }
+
+    @Override
+    public synchronized void setElapsed(long millies) {
+        write(0, 0, width, "Elapsed time: " + millies / 1000, BOLD);
+    }
+
+    @Override
+    public synchronized void setFreeze(int player, long millies) {
+        freezes[player] = millies;
+        drawPlayer(player);
+    }
+
+    @Override
+    public synchronized void setScore(int player, int score) {
+        scores[player] = score;
+        drawPlayer(player);
+    }
+
+    @Override
+    public synchronized void announceWinner(int[] players) {
+        List<String> names = Arrays.stream(players).mapToObj(id -> config.playerNames[id]).collect(Collectors.toList());
+        String text;
+        if (players.length == 1) text = "THE WINNER IS: " + names.get(0) + "!!!";
+        else text = "IT IS A DRAW: " + String.join(" AND ", names) + " WON!!!";
+        write(winnerLine, 0, width, text, BOLD);
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        refreshThread.interrupt();
+        try {
+            refreshThread.join(config.terminalRefreshMillis + 1000);
+        } catch (InterruptedException ignored) {}
+        out.print(ESC + "0m" + ESC + "?25h" + ESC + (height + 1) + ";1H");
+        out.flush();
+    }
+}
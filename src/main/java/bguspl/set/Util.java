@@ -31,6 +31,26 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Finds the card that completes the first featureSize - 1 cards of an array to a legal set.
+     * Note: only meaningful for featureSize >= 3 (with 2 cards per set, every pair is a legal set).
+     *
+     * @param cards - an array of at least featureSize - 1 card ids.
+     * @return - the completing card id, or -1 if no card completes them.
+     */
+    int completeSet(int[] cards);
+
+    /**
+     * Checks many candidate sets at once.
+     * The candidates are given as columns: candidates[j][i] is the j-th card of the i-th candidate, so there must be
+     * config.featureSize columns of at least length cards each.
+     *
+     * @param candidates - the card columns of the candidates.
+     * @param length     - the number of candidates.
+     * @return - a bitmap where bit i % 64 of word i / 64 is set iff the i-th candidate forms a legal set.
+     */
+    long[] testSets(int[][] candidates, int length);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +60,16 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns up to count sets in the first length cards of the given array.
+     *
+     * @param cards  - an array of card ids.
+     * @param length - the number of cards of the array to search in.
+     * @param count  - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set.
+     */
+    List<int[]> findSets(int[] cards, int length, int count);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
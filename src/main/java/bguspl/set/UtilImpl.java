@@ -1,9 +1,14 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
 import java.util.stream.IntStream;
 
 /**
@@ -11,10 +16,27 @@ import java.util.stream.IntStream;
  */
 public class UtilImpl implements Util {
 
+    /**
+     * The number of card encodings cached by testSets (a power of 2).
+     */
+    private static final int ONE_HOT_CACHE_SIZE = 256;
+
     private final Config config;
 
+    /**
+     * The weight of each feature in a card id (i.e. featureSize ^ (featureCount - 1 - i) for feature i).
+     */
+    private final int[] featureWeights;
+
     public UtilImpl(Config config) {
         this.config = config;
+        featureWeights = new int[config.featureCount];
+        for (int i = config.featureCount - 1, weight = 1; i >= 0; --i, weight *= config.featureSize)
+            featureWeights[i] = weight;
+    }
+
+    private int feature(int card, int i) {
+        return card / featureWeights[i] % config.featureSize;
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -38,56 +60,280 @@ public class UtilImpl implements Util {
         return features;
     }
 
+    /**
+     * Counts the distinct values of a feature among the first length cards of an array (without allocating).
+     */
+    private int distinctValues(int[] cards, int length, int i) {
+        if (config.featureSize <= Long.SIZE) {
+            long seen = 0;
+            for (int j = 0; j < length; ++j)
+                seen |= 1L << feature(cards[j], i);
+            return Long.bitCount(seen);
+        }
+
+        int distinct = 0;
+        for (int j = 0; j < length; ++j) {
+            int value = feature(cards[j], i), k = 0;
+            while (k < j && feature(cards[k], i) != value) ++k;
+            if (k == j) ++distinct;
+        }
+        return distinct;
+    }
+
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
         for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
+            // a feature must be either sameSame or butDifferent in all cards (but not both)
+            int distinct = distinctValues(cards, cards.length, i);
+            boolean sameSame = distinct == 1, butDifferent = distinct == cards.length;
+            if (sameSame == butDifferent) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Packs the features of a card into a long, one group of featureSize bits per feature with only the bit of the
+     * feature's value set. The features of a candidate set are then combined with a single OR per card.
+     */
+    private long cardToOneHot(int card) {
+        long packed = 0;
+        for (int i = config.featureCount - 1, shift = 0; i >= 0; --i, shift += config.featureSize) {
+            packed |= 1L << (shift + card % config.featureSize);
+            card /= config.featureSize;
+        }
+        return packed;
+    }
+
+    @Override
+    public long[] testSets(int[][] candidates, int length) {
+        int r = config.featureSize;
+        long[] result = new long[(length + Long.SIZE - 1) / Long.SIZE];
+
+        if (r * config.featureCount > Long.SIZE) {
+            // the features do not fit in a long, check the candidates one by one
+            int[] cards = new int[r];
+            for (int i = 0; i < length; ++i) {
+                for (int j = 0; j < r; ++j)
+                    cards[j] = candidates[j][i];
+                if (testSet(cards)) result[i / Long.SIZE] |= 1L << i;
+            }
+            return result;
+        }
 
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
+        // candidates usually share cards (e.g. all come from the table), so recent encodings are cached
+        int[] cachedCards = new int[ONE_HOT_CACHE_SIZE];
+        long[] cachedOneHots = new long[ONE_HOT_CACHE_SIZE];
+        Arrays.fill(cachedCards, -1);
+
+        long groupMask = (1L << r) - 1;
+        long lowBits = 0; // the lowest bit of every feature group
+        for (int i = 0; i < config.featureCount; ++i)
+            lowBits |= 1L << (i * r);
+
+        for (int i = 0; i < length; ++i) {
+            long or = 0;
+            for (int j = 0; j < r; ++j) {
+                int card = candidates[j][i];
+                int index = card & (ONE_HOT_CACHE_SIZE - 1);
+                if (cachedCards[index] != card) {
+                    cachedCards[index] = card;
+                    cachedOneHots[index] = cardToOneHot(card);
                 }
+                or |= cachedOneHots[index];
+            }
 
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
+            // a feature is sameSame iff its group has a single bit set and butDifferent iff all r bits are set
+            boolean legal;
+            if (r == 3) {
+                long b0 = or & lowBits, b1 = (or >>> 1) & lowBits, b2 = (or >>> 2) & lowBits;
+                legal = ((b0 & b1 | b0 & b2 | b1 & b2) & ~(b0 & b1 & b2)) == 0;
+            } else {
+                legal = true;
+                for (int shift = 0; legal && shift < r * config.featureCount; shift += r) {
+                    int bits = Long.bitCount((or >>> shift) & groupMask);
+                    legal = (bits == 1) != (bits == r);
+                }
+            }
+            if (legal) result[i / Long.SIZE] |= 1L << i;
+        }
+        return result;
+    }
 
-            if (sameSame == butDifferent) return false;
+    @Override
+    public int completeSet(int[] cards) {
+        int r = config.featureSize;
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int distinct = distinctValues(cards, r - 1, i);
+            int value;
+            if (distinct == 1) value = feature(cards[0], i);
+            else if (distinct == r - 1) {
+                // the missing value is the one not taken by the other cards
+                value = r * (r - 1) / 2;
+                for (int j = 0; j < r - 1; ++j) value -= feature(cards[j], i);
+            } else return -1;
+            card += value * featureWeights[i];
         }
-        return true;
+        return card;
     }
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        return findSets(deck.stream().mapToInt(Integer::intValue).toArray(), deck.size(), count);
+    }
+
+    @Override
+    public List<int[]> findSets(int[] cards, int length, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
+        if (count <= 0 || length < config.featureSize) return sets;
+
+        Object search = GameEvents.setSearchStarted();
+        int[] sorted = Arrays.copyOf(cards, length);
+        Arrays.sort(sorted);
+
+        if (config.parallelSearchThreshold > 0 && length >= config.parallelSearchThreshold) {
+            List<int[]> found = new ParallelSearch(sorted, count).invoke();
+            GameEvents.setSearchEnded(search, "parallel", length, found.size());
+            return found;
+        }
+
+        for (int first = 0; first < length && sets.size() < count; ++first)
+            findSetsFrom(sorted, first, count - sets.size(), sets, () -> false);
+        GameEvents.setSearchEnded(search, "sequential", length, sets.size());
+        return sets;
+    }
+
+    /**
+     * Finds up to count sets whose lowest card is sorted[first] (in lexicographic order) and adds them to sets.
+     *
+     * @param sorted    - the cards to search in, sorted in ascending order.
+     * @param first     - the index of the lowest card of the sets to find.
+     * @param count     - the maximum number of sets to find.
+     * @param sets      - the list to add the sets to.
+     * @param cancelled - polled during the search, which stops once it returns true.
+     */
+    private void findSetsFrom(int[] sorted, int first, int count, List<int[]> sets, BooleanSupplier cancelled) {
         int r = config.featureSize;
-        int[] combination = new int[r];
+        int length = sorted.length;
 
-        for (int i = 0; i < r; ++i)
-            combination[i] = i;
+        // the last card of a set is determined by the others, so only combinations of r - 1 cards are generated
+        // and the missing card is looked up (with 2 cards per set there is nothing to look up)
+        boolean complete = r >= 3;
+        int k = complete ? r - 1 : r;
+        if (first > length - k) return;
+        int[] combination = new int[k];
+        int[] set = new int[r];
+        for (int i = 0; i < k; ++i)
+            combination[i] = first + i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        int found = 0;
+        while (!cancelled.getAsBoolean()) {
+            for (int i = 0; i < k; ++i)
+                set[i] = sorted[combination[i]];
+            if (complete) {
+                int last = completeSet(set);
+                if (last > set[k - 1] && Arrays.binarySearch(sorted, combination[k - 1] + 1, length, last) >= 0) {
+                    set[k] = last;
+                    sets.add(set.clone());
+                    ++found;
+                }
+            } else if (testSet(set)) {
+                sets.add(set.clone());
+                ++found;
             }
+            if (found >= count) return;
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
+            // generate next combination in lexicographic order (keeping the first card)
+            int t = k - 1;
+            while (t > 0 && combination[t] == length - k + t) --t;
+            if (t == 0) return;
             combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            for (int i = t + 1; i < k; i++) combination[i] = combination[i - 1] + 1;
+        }
+    }
+
+    /**
+     * Searches sets in parallel, splitting the range of the lowest card index between fork/join tasks.
+     * The sets of each lowest card are kept apart and merged in order, so the result is the same as the sequential
+     * search. Once the sets of a prefix of lowest cards add up to count, tasks beyond that prefix are cancelled.
+     */
+    private class ParallelSearch {
+
+        private final int[] sorted;
+        private final int count;
+
+        /**
+         * The sets found for each lowest card index, and whether the search for it is complete.
+         */
+        private final List<List<int[]>> found;
+        private final boolean[] done;
+
+        /**
+         * The number of lowest card indices (from 0) whose search is complete, and the number of sets they found.
+         */
+        private int settled;
+        private int settledSets;
+
+        /**
+         * The lowest card index from which no more sets are needed.
+         */
+        private volatile int cutoff;
+
+        private ParallelSearch(int[] sorted, int count) {
+            this.sorted = sorted;
+            this.count = count;
+            found = new ArrayList<>(Collections.nCopies(sorted.length, (List<int[]>) null));
+            done = new boolean[sorted.length];
+            cutoff = sorted.length;
+        }
+
+        private List<int[]> invoke() {
+            int grain = Math.max(1, sorted.length / (ForkJoinPool.getCommonPoolParallelism() * 16));
+            ForkJoinPool.commonPool().invoke(new SearchTask(0, sorted.length, grain));
+
+            LinkedList<int[]> sets = new LinkedList<>();
+            for (int first = 0; first < cutoff && sets.size() < count; ++first)
+                sets.addAll(found.get(first));
+            while (sets.size() > count) sets.removeLast();
+            return sets;
+        }
+
+        private synchronized void settle(int first, List<int[]> sets) {
+            found.set(first, sets);
+            done[first] = true;
+            while (settled < cutoff && done[settled]) {
+                settledSets += found.get(settled).size();
+                if (++settled < cutoff && settledSets >= count) cutoff = settled;
+            }
+        }
+
+        private class SearchTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int from, to, grain;
+
+            private SearchTask(int from, int to, int grain) {
+                this.from = from;
+                this.to = to;
+                this.grain = grain;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > grain) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new SearchTask(from, middle, grain), new SearchTask(middle, to, grain));
+                    return;
+                }
+                for (int first = from; first < to && first < cutoff; ++first) {
+                    int lowest = first;
+                    List<int[]> sets = new LinkedList<>();
+                    findSetsFrom(sorted, first, count, sets, () -> lowest >= cutoff);
+                    settle(first, sets);
+                }
+            }
         }
-        return sets;
     }
 
     public void spin() {
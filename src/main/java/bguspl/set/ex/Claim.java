@@ -0,0 +1,100 @@
+package bguspl.set.ex;
+
+/**
+ * A set claimed by a player.
+ * The player validates its claim against a snapshot of the table on its own thread, and only forwards the legal
+ * claims to the dealer, who commits them if the claimed cards are still where the snapshot had them.
+ */
+public final class Claim {
+
+  /**
+   * The outcome of a claim.
+   */
+  public enum Verdict {
+    /** The claim is a legal set and its cards were removed from the table. */
+    POINT,
+    /** The claim is not a legal set. */
+    PENALTY,
+    /** The table changed under the claim (e.g. one of its cards was taken by another set), so it was dropped. */
+    STALE,
+  }
+
+  /**
+   * The id of the player who claimed the set.
+   */
+  public final int player;
+
+  /**
+   * The generation of the table snapshot the claim was validated on.
+   */
+  public final long generation;
+
+  /**
+   * The slots of the player's tokens and the cards that were in them in the snapshot.
+   */
+  final int[] slots;
+  final int[] cards;
+
+  /**
+   * The order the claim was submitted in (assigned by the claim validator, if any).
+   */
+  long sequence;
+
+  /**
+   * False iff a claim validator found that the cards are not a legal set.
+   */
+  boolean legal = true;
+
+  /**
+   * True iff a claim validator found that the table already changed under the claim.
+   */
+  boolean stale;
+
+  /**
+   * The verdict on the claim (null until decided, guarded by this).
+   */
+  private Verdict verdict;
+
+  Claim(int player, long generation, int[] slots, int[] cards) {
+    this.player = player;
+    this.generation = generation;
+    this.slots = slots;
+    this.cards = cards;
+  }
+
+  /**
+   * Checks that the claim still matches the table: the table did not change since the snapshot the claim was
+   * validated on, or at least the claimed cards are still in their slots.
+   *
+   * @param snapshot - the current snapshot of the table.
+   * @return - true iff the claim matches the snapshot.
+   */
+  boolean matches(TableSnapshot snapshot) {
+    if (snapshot.generation == generation) return true;
+    for (int i = 0; i < cards.length; i++) if (
+      snapshot.card(slots[i]) != cards[i]
+    ) return false;
+    return true;
+  }
+
+  /**
+   * Decides the claim and wakes up the player waiting for it.
+   *
+   * @param verdict - the verdict.
+   */
+  synchronized void decide(Verdict verdict) {
+    this.verdict = verdict;
+    notifyAll();
+  }
+
+  /**
+   * Waits for the verdict on the claim.
+   *
+   * @return - the verdict.
+   * @throws InterruptedException - if the player was interrupted (e.g. the game is over).
+   */
+  synchronized Verdict await() throws InterruptedException {
+    while (verdict == null) wait();
+    return verdict;
+  }
+}
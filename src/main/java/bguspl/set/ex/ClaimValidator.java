@@ -0,0 +1,114 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * This class validates the set claims on a pool of worker threads.
+ * Every claim gets a sequence number when it is submitted. The workers check the claims concurrently (whether the
+ * cards are a legal set, and whether they are still in their slots), and a reorder buffer hands the checked claims to
+ * the committer strictly in sequence order, so when two claims share a slot the one submitted first always wins.
+ */
+public class ClaimValidator {
+
+  private final Env env;
+  private final Table table;
+  private final ExecutorService workers;
+
+  /**
+   * Called with the checked claims, in the order they were submitted (while holding the lock of this).
+   */
+  private final Consumer<Claim> committer;
+
+  /**
+   * The number of claims submitted so far (guarded by this).
+   */
+  private long submitted;
+
+  /**
+   * The checked claims that wait for an earlier claim, by sequence number, and the next sequence number to hand to
+   * the committer (guarded by this).
+   */
+  private final Map<Long, Claim> reorder = new HashMap<>();
+  private long next;
+
+  /**
+   * @param env       - the game environment object.
+   * @param table     - the table the claims are made on.
+   * @param workers   - the number of worker threads.
+   * @param committer - called with the checked claims, in the order they were submitted.
+   */
+  public ClaimValidator(
+    Env env,
+    Table table,
+    int workers,
+    Consumer<Claim> committer
+  ) {
+    this.env = env;
+    this.table = table;
+    this.committer = committer;
+    AtomicInteger count = new AtomicInteger();
+    this.workers =
+      Executors.newFixedThreadPool(
+        workers,
+        task -> {
+          Thread thread = new Thread(
+            task,
+            "validator-" + count.incrementAndGet()
+          );
+          thread.setDaemon(true);
+          return thread;
+        }
+      );
+  }
+
+  /**
+   * Submits a claim to be checked.
+   * A claim whose check fails with an exception is committed as stale, so it is dropped without a penalty.
+   *
+   * @param claim - the claim.
+   */
+  public void submit(Claim claim) {
+    synchronized (this) {
+      claim.sequence = submitted++;
+    }
+    workers.execute(() -> validate(claim));
+  }
+
+  /**
+   * Stops the workers (the claims not checked yet are never committed).
+   */
+  public void terminate() {
+    workers.shutdownNow();
+  }
+
+  private void validate(Claim claim) {
+    try {
+      claim.legal = env.util.testSet(claim.cards);
+      // a claim that lost its cards can be dropped without bothering the committer's lock
+      claim.stale = claim.legal && !claim.matches(table.snapshot());
+    } catch (RuntimeException e) {
+      // the claim must still fill its sequence slot, or the claims after it (and their players) would wait forever
+      env.logger.severe("error validating the claim of player " + claim.player + ": " + e);
+      claim.legal = true;
+      claim.stale = true;
+    }
+    release(claim);
+  }
+
+  /**
+   * Hands the claim, and the claims submitted after it that were already checked, to the committer once all the
+   * claims submitted before it were handed over.
+   */
+  private synchronized void release(Claim claim) {
+    reorder.put(claim.sequence, claim);
+    for (Claim ready; (ready = reorder.remove(next)) != null; ++next) committer.accept(
+      ready
+    );
+  }
+}
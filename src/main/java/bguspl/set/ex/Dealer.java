@@ -1,22 +1,29 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameLifecycle;
+import bguspl.set.TimerWheel;
+import java.io.IOException;
 import java.time.Year;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * This class manages the dealer's threads and data
  */
 public class Dealer implements Runnable {
 
+  /**
+   * The maximal number of sets examined when only some of the cards of a set can be swapped in.
+   */
+  private static final int SWAP_SEARCH_LIMIT = 1000;
+
   /**
    * The game environment object.
    */
@@ -29,9 +36,14 @@ public class Dealer implements Runnable {
   private final Player[] players;
 
   /**
-   * The list of card ids that are left in the dealer's deck.
+   * The cards that are left in the dealer's deck.
    */
-  private final List<Integer> deck;
+  private final Deck deck;
+
+  /**
+   * The leaderboard the result of the game is recorded in (null if none).
+   */
+  private final LeaderboardStore leaderboard;
 
   /**
    * True iff game should be terminated.
@@ -45,45 +57,103 @@ public class Dealer implements Runnable {
 
   private boolean isThereAnySets;
 
-  /*
-   * semaphore for checking sets
+  /**
+   * The sets claimed by the players, waiting for the dealer to commit them in the order they were submitted.
    */
-  public Semaphore setSempahore;
-
-  public Thread dealerThread;
+  private final ConcurrentLinkedQueue<Claim> claims = new ConcurrentLinkedQueue<>();
 
-  /*
-    Hash map to find all the threds that locks the semaphore
-    */
+  /**
+   * The workers that check the claims before they are committed (null if the players check their own claims).
+   */
+  private final ClaimValidator validator;
 
-  public int playerWhoClaimedSet;
+  /**
+   * Reports the game threads that stop making progress.
+   */
+  private final Watchdog watchdog;
 
-  public int[] cardsSet;
+  /**
+   * Owns the threads the dealer starts (the players, the claim validators and the watchdog).
+   */
+  private final GameLifecycle lifecycle;
 
   private boolean reset;
 
+  /**
+   * True iff the timer ticked since the dealer last waited (guarded by tickLock).
+   */
+  private boolean tickDue;
+
+  private final Object tickLock = new Object();
+
   /**
    * The time when the dealer needs to reshuffle the deck due to turn timeout.
    */
   private long reshuffleTime = Long.MAX_VALUE;
 
+  /**
+   * The time of the last reshuffle or collected set (shown by the elapsed timer).
+   */
+  private long lastActionTime;
+
+  /**
+   * True iff there is no legal set on the table, so the dealer should reshuffle right away.
+   */
+  private boolean deadTable;
+
   public Dealer(Env env, Table table, Player[] players) {
+    this(env, table, players, null);
+  }
+
+  public Dealer(
+    Env env,
+    Table table,
+    Player[] players,
+    LeaderboardStore leaderboard
+  ) {
+    this(
+      env,
+      table,
+      players,
+      leaderboard,
+      new Deck(env.config.deckSize, env.config.deckSeed)
+    );
+  }
+
+  Dealer(
+    Env env,
+    Table table,
+    Player[] players,
+    LeaderboardStore leaderboard,
+    Deck deck
+  ) {
     this.env = env;
     this.table = table;
     this.players = players;
+    this.leaderboard = leaderboard;
     reset = false;
-    deck =
-      IntStream
-        .range(0, env.config.deckSize)
-        .boxed()
-        .collect(Collectors.toList());
+    this.deck = deck;
     terminate = false;
     timerValue = env.config.turnTimeoutMillis;
-    setSempahore = new Semaphore(1, true);
-    // reshuffleTime = env.config.turnTimeoutMillis;
-    playerWhoClaimedSet = -1;
-    cardsSet = new int[env.config.featureSize];
     isThereAnySets = true;
+    validator =
+      env.config.claimValidators > 0
+        ? new ClaimValidator(
+          env,
+          table,
+          env.config.claimValidators,
+          claim -> {
+            claims.add(claim);
+            wakeUp();
+          }
+        )
+        : null;
+    watchdog = new Watchdog(env.logger, env.config.watchdogStallMillis);
+    lifecycle = new GameLifecycle(env.logger, env.config.shutdownTimeoutMillis);
+    if (validator != null) lifecycle.register(
+      "claim-validator",
+      validator::terminate
+    );
   }
 
   /**
@@ -91,28 +161,32 @@ public class Dealer implements Runnable {
    */
   @Override
   public void run() {
-    dealerThread = Thread.currentThread();
     env.logger.info(
       "thread " + Thread.currentThread().getName() + " starting."
     );
+    Watchdog.Heartbeat heartbeat = watchdog.register(
+      "dealer",
+      Thread.currentThread()
+    );
+    lifecycle.register("watchdog", watchdog::terminate);
+    watchdog.start();
     shuffleDeck();
     placeCardsOnTable();
 
-    for (Player player : players) {
-      Thread playerThread = new Thread(() -> player.run());
-      playerThread.start();
-    }
-    env.ui.setCountdown(timerValue, false);
+    for (Player player : players) lifecycle.start(
+      "player-" + player.id,
+      player,
+      player::terminate
+    );
+    updateTimerDisplay(true);
     while (!shouldFinish()) {
-      timerLoop(); // Runs until timer reaches 0.
+      timerLoop(heartbeat); // Runs until timer reaches 0.
       updateTimerDisplay(true);
-      removeAllCardsFromTable();
-      shuffleDeck();
-    }
-    for (Player player : players) {
-      player.terminate();
-      player.getPlayerThread().interrupt();
+      Object reshuffle = GameEvents.reshuffleStarted();
+      GameEvents.reshuffleEnded(reshuffle, removeAllCardsFromTable());
     }
+    // the players (and their computer threads) stop first, before the services they use
+    lifecycle.shutdown();
     removeAllCardsFromTable();
     announceWinners();
 
@@ -122,21 +196,79 @@ public class Dealer implements Runnable {
   }
 
   /**
-   * The inner loop of the dealer thread that runs as long as the countdown did not time out.
+   * The inner loop of the dealer thread that runs as long as the countdown did not time out (if there is a countdown)
+   * and there is a legal set on the table.
    */
-  private void timerLoop() {
+  private void timerLoop(Watchdog.Heartbeat heartbeat) {
     reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-    while (!terminate && timerValue >= 0) { // Normally runs every second
-      sleepUntilWokenOrTimeout();
+    deadTable = isDeadTable();
+    while (!terminate && !deadTable && (!countdown() || timerValue > 0)) { // Normally runs every second
+      heartbeat.beat();
+      sleepUntilWokenOrTimeout(heartbeat);
       updateTimerDisplay(reset);
     }
   }
 
+  /**
+   * @return - true iff the game has a turn countdown (rather than an elapsed timer or no timer at all).
+   */
+  private boolean countdown() {
+    return env.config.turnTimeoutMillis > 0;
+  }
+
+  /**
+   * Checks the table for legal sets (incrementally, from the sets found on the table before the last change).
+   *
+   * @return - true iff there is no legal set on the table.
+   */
+  private boolean isDeadTable() {
+    // a table too small for a set can only be changed by the countdown
+    return (
+      env.config.tableSize >= env.config.featureSize &&
+      table.hintService().sets().isEmpty()
+    );
+  }
+
   /**
    * Called when the game should be terminated.
    */
   public void terminate() {
     terminate = true;
+    wakeUp();
+  }
+
+  /**
+   * @return - the watchdog of the game threads.
+   */
+  public Watchdog watchdog() {
+    return watchdog;
+  }
+
+  /**
+   * @return - the lifecycle that owns the threads of the game started by the dealer.
+   */
+  public GameLifecycle lifecycle() {
+    return lifecycle;
+  }
+
+  /**
+   * @return - true iff the claims are checked by the claim validator workers, rather than by the players.
+   */
+  public boolean validatesClaims() {
+    return validator != null;
+  }
+
+  /**
+   * Submits a set claimed by a player for the dealer to commit (called by the player thread).
+   *
+   * @param claim - the claim, validated against a snapshot of the table (unless validatesClaims()).
+   */
+  public void submit(Claim claim) {
+    GameEvents.claimSubmitted(claim.player, claim.slots);
+    if (validator != null) validator.submit(claim); else {
+      claims.add(claim);
+      wakeUp();
+    }
   }
 
   /**
@@ -149,113 +281,237 @@ public class Dealer implements Runnable {
   }
 
   /**
-   * Checks cards should be removed from the table and removes them.
+   * Removes the cards of a set from the table and replaces them in one step (called while holding the table's write
+   * lock).
+   *
+   * @param cards - the cards of the set.
    */
-  private void removeCardsFromTable() {
-    if (playerWhoClaimedSet != -1) {
-      table.lock.writeLock().lock();
-      for (int card : cardsSet) {
-        LinkedList<Integer> playersWhoPlacedTokens = table.getAllPlayersThatPlacedTokenOnSlot(
-          table.cardToSlot[card]
-        );
-        for (int playerId : playersWhoPlacedTokens) {
-          players[playerId].tokensCounter--;
-        }
-        table.removeCard(table.cardToSlot[card]);
+  private void removeCardsFromTable(int[] cards) {
+    int[] slots = new int[cards.length];
+    for (int i = 0; i < cards.length; i++) {
+      slots[i] = table.cardToSlot(cards[i]);
+      for (int playerId : table.getPlayersWithTokenOn(slots[i])) {
+        players[playerId].tokensCounter--;
       }
-      placeCardsOnTable();
-      table.lock.writeLock().unlock();
     }
+    int[] kept = Arrays
+      .stream(table.snapshot().cards())
+      .filter(card -> Arrays.stream(cards).noneMatch(c -> c == card))
+      .toArray();
+    int[] dealt = dealCards(cards.length, kept);
+    int[] replacements = Arrays.copyOf(dealt, cards.length);
+    Arrays.fill(replacements, dealt.length, cards.length, TableSnapshot.NO_CARD);
+    table.replaceCards(slots, replacements);
   }
 
   /**
-   * Check if any cards can be removed from the deck and placed on the table.
+   * Check if any cards can be removed from the deck and placed on the table (all of them in one step).
+   *
+   * @return - the number of cards placed.
    */
-  private void placeCardsOnTable() {
-    for (int i = 0; i < table.slotToCard.length && deck.size() > 0; i++) {
-      if (table.slotToCard[i] == null) {
-        //pulling a card from the deck and adding it to the table
-        int cardToPlace = deck.remove(0);
-        table.placeCard(cardToPlace, i);
+  int placeCardsOnTable() {
+    TableSnapshot snapshot = table.snapshot();
+    int[] slots = new int[snapshot.slots()];
+    int count = 0;
+    for (int slot = 0; slot < snapshot.slots(); slot++) {
+      if (!snapshot.hasCard(slot)) slots[count++] = slot;
+    }
+    //pulling the cards from the top of the deck and adding them to the table
+    int[] cards = dealCards(count, snapshot.cards());
+    if (cards.length > 0) table.replaceCards(
+      Arrays.copyOf(slots, cards.length),
+      cards
+    );
+    return cards.length;
+  }
+
+  /**
+   * Deals cards from the deck. If the dealer guarantees a set, the dealt cards are chosen so that the table has a set
+   * once they are placed, whenever the cards on the table and in the deck allow it.
+   *
+   * @param count - the number of cards to deal.
+   * @param kept  - the cards that stay on the table.
+   * @return - the dealt cards (fewer than count if the deck runs out).
+   */
+  private int[] dealCards(int count, int[] kept) {
+    int[] dealt = new int[Math.min(count, deck.size())];
+    for (int i = 0; i < dealt.length; i++) dealt[i] = deck.deal();
+    if (env.config.guaranteeSet && dealt.length > 0) ensureSet(kept, dealt);
+    return dealt;
+  }
+
+  /**
+   * Swaps dealt cards for cards from the deck that complete a set with the cards on the table, if the table would have
+   * no set otherwise.
+   *
+   * @param kept  - the cards that stay on the table.
+   * @param dealt - the dealt cards (replaced in place; the cards swapped out are returned to the deck).
+   */
+  private void ensureSet(int[] kept, int[] dealt) {
+    int[] table = concat(kept, dealt);
+    if (!env.util.findSets(table, table.length, 1).isEmpty()) return;
+
+    // a set needs at most as many new cards as there are dealt slots
+    int[] pool = concat(table, deck.cards());
+    List<int[]> sets = env.util.findSets(
+      pool,
+      pool.length,
+      dealt.length >= env.config.featureSize ? 1 : SWAP_SEARCH_LIMIT
+    );
+    for (int[] set : sets) {
+      int[] fresh = Arrays
+        .stream(set)
+        .filter(card -> Arrays.stream(kept).noneMatch(c -> c == card))
+        .toArray();
+      if (fresh.length > dealt.length) continue;
+      // the fresh cards go first, then the dealt cards that are not in the set
+      int[] chosen = concat(
+        fresh,
+        Arrays
+          .stream(dealt)
+          .filter(card -> Arrays.stream(fresh).noneMatch(c -> c == card))
+          .toArray()
+      );
+      for (int card : fresh) deck.take(card);
+      for (int i = dealt.length; i < chosen.length; i++) deck.returnCard(
+        chosen[i]
+      );
+      System.arraycopy(chosen, 0, dealt, 0, dealt.length);
+      return;
+    }
+  }
+
+  private static int[] concat(int[] first, int[] second) {
+    int[] both = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, both, first.length, second.length);
+    return both;
+  }
+
+  /**
+   * Sleep until the next countdown tick (scheduled on the game's timer) or until the thread is awakened for some
+   * purpose.
+   */
+  private void sleepUntilWokenOrTimeout(Watchdog.Heartbeat heartbeat) {
+    if (commitClaims()) {
+      updateTimerValue();
+      return;
+    }
+    // without a timer to display, the dealer only wakes up for the claims
+    TimerWheel.Timeout tick = env.config.turnTimeoutMillis < 0
+      ? null
+      : env.timers.schedule(nextTickDelay(), this::tick);
+    // with no tick coming, waiting for a claim forever is not a stall
+    if (tick == null) heartbeat.idle();
+    try {
+      synchronized (tickLock) {
+        // woken up by the tick, by a claim or when the game is terminated
+        while (!tickDue && claims.isEmpty() && !terminate) tickLock.wait();
+        tickDue = false;
       }
+    } catch (InterruptedException ignored) {}
+    heartbeat.beat();
+    if (tick != null) tick.cancel();
+    if (terminate) return;
+    commitClaims();
+    updateTimerValue();
+  }
+
+  /**
+   * @return - the number of milliseconds until the timer display changes.
+   */
+  private long nextTickDelay() {
+    if (!countdown()) return (
+      1000 - (System.currentTimeMillis() - lastActionTime) % 1000
+    );
+    long remaining = reshuffleTime - System.currentTimeMillis();
+    // the display changes every second, or every tick in the warning period
+    return remaining <= env.config.turnTimeoutWarningMillis
+      ? env.config.timerTickMillis
+      : remaining % 1000 == 0 ? 1000 : remaining % 1000;
+  }
+
+  /**
+   * Wakes the dealer up for the next countdown tick (runs on the timer thread).
+   */
+  private void tick() {
+    synchronized (tickLock) {
+      tickDue = true;
+      tickLock.notifyAll();
     }
   }
 
   /**
-   * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
-   */
-  private void sleepUntilWokenOrTimeout() {
-    long start = System.currentTimeMillis();
-    int refreshRate = 10;
-    long remainingTime = refreshRate;
-    if (playerWhoClaimedSet != -1) {
-      cardsSet = table.getSetCards(playerWhoClaimedSet);
-      //if there is a set
-      if (env.util.testSet(cardsSet)) {
-        //update the field in the player whos waiting for set
-        players[playerWhoClaimedSet].foundSet = true;
-        //removing the cards and will update in the function the token counters for players
-        removeCardsFromTable();
-        // interrupt the player to update his state
-        players[playerWhoClaimedSet].getPlayerThread().interrupt();
-        updatePlayerWhoClaimedSet(-1);
+   * Wakes the dealer up to commit the claims or to terminate.
+   */
+  private void wakeUp() {
+    synchronized (tickLock) {
+      tickLock.notifyAll();
+    }
+  }
+
+  /**
+   * Commits the claimed sets in the order they were submitted. The players (or the claim validator) already checked
+   * that the sets are legal, so the dealer only checks that each claim still matches the table and that the player's
+   * tokens were not moved.
+   *
+   * @return - true iff a set was removed from the table.
+   */
+  private boolean commitClaims() {
+    boolean removed = false;
+    for (Claim claim; (claim = claims.poll()) != null;) {
+      if (!claim.legal || claim.stale) {
+        claim.decide(claim.legal ? Claim.Verdict.STALE : Claim.Verdict.PENALTY);
+        continue;
+      }
+      boolean valid;
+      long requested = GameEvents.tableLockRequested();
+      table.lock.writeLock().lock();
+      Object locked = GameEvents.tableLocked(true, requested);
+      try {
+        valid =
+          claim.matches(table.snapshot()) &&
+          Arrays.equals(claim.slots, table.getTokenSlots(claim.player));
+        if (valid) removeCardsFromTable(claim.cards);
+      } finally {
+        GameEvents.tableUnlocked(locked);
+        table.lock.writeLock().unlock();
+      }
+      if (valid) {
         // update the time of reshuffeling
-        reshuffleTime =
-          System.currentTimeMillis() + env.config.turnTimeoutMillis;
+        reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
         reset = true;
-        return;
+        removed = true;
       }
-      players[playerWhoClaimedSet].getPlayerThread().interrupt();
-      updatePlayerWhoClaimedSet(-1);
-      // }
-      //sync on the player who claim the set
+      claim.decide(valid ? Claim.Verdict.POINT : Claim.Verdict.STALE);
     }
-    while (remainingTime > 0) {
-      try {
-        // dealer thread trying to sleep for 10 miliseconds
-        Thread.sleep(remainingTime);
-        remainingTime = 0;
-      } catch (InterruptedException e) {
-        //the case some player tries to claim a set or the game is terminated
-        if (terminate) return;
-        //if someone tries to claim a set
-        if (playerWhoClaimedSet != -1) {
-          // synchronized (players[playerWhoClaimedSet]) {
-          //get the cards from the table, each player has a list of tokens on the table data structure
-          cardsSet = table.getSetCards(playerWhoClaimedSet);
-          //if there is a set
-          if (env.util.testSet(cardsSet)) {
-            //update the field in the player whos waiting for set
-            players[playerWhoClaimedSet].foundSet = true;
-            //removing the cards and will update in the function the token counters for players
-            removeCardsFromTable();
-            // interrupt the player to update his state
-            int p = playerWhoClaimedSet;
-            updatePlayerWhoClaimedSet(-1);
-            players[p].getPlayerThread().interrupt();
-
-            // update the time
-            reset = true;
-            return;
-          }
-          players[playerWhoClaimedSet].getPlayerThread().interrupt();
-          updatePlayerWhoClaimedSet(-1);
-          // }
-          //sync on the player who claimthe set
+    if (removed) deadTable = isDeadTable();
+    return removed;
+  }
 
-        }
-        remainingTime = start + refreshRate - System.currentTimeMillis();
-      }
-    }
-    timerValue -= refreshRate;
+  /**
+   * Updates the countdown value from the reshuffle time.
+   */
+  private void updateTimerValue() {
+    long remaining = Math.max(reshuffleTime - System.currentTimeMillis(), 0);
+    // the timer never runs a task early, so out of the warning period round up to the second it is in
+    timerValue = remaining <= env.config.turnTimeoutWarningMillis
+      ? remaining
+      : (remaining + 999) / 1000 * 1000;
   }
 
   /**
-   * Reset and/or update the countdown and the countdown display.
+   * Reset and/or update the timer and the timer display: the countdown, the time elapsed since the last action, or
+   * nothing at all.
    */
   private void updateTimerDisplay(boolean reset) {
-    if (reset) {
-      this.reset = false;
+    if (reset) this.reset = false;
+    if (env.config.turnTimeoutMillis < 0) return;
+    if (!countdown()) {
+      long now = System.currentTimeMillis();
+      if (reset) lastActionTime = now;
+      // the ticks never run early, so the elapsed time is rounded down to the second it is in
+      env.ui.setElapsed((now - lastActionTime) / 1000 * 1000);
+    } else if (reset) {
       env.ui.setCountdown(env.config.turnTimeoutMillis, false);
       timerValue = env.config.turnTimeoutMillis;
     } else {
@@ -267,31 +523,35 @@ public class Dealer implements Runnable {
   }
 
   /**
-   * Returns all the cards from the table to the deck.
+   * Returns all the cards from the table to the deck and shuffles it (and deals new ones, unless the game is over).
+   *
+   * @return - the number of cards removed from and placed on the table.
    */
-  private void removeAllCardsFromTable() {
+  private int removeAllCardsFromTable() {
+    long requested = GameEvents.tableLockRequested();
     table.lock.writeLock().lock();
+    Object locked = GameEvents.tableLocked(true, requested);
 
-    for (Integer card : table.slotToCard) {
-      if (card != null) {
-        deck.add(card);
-        table.removeCard(table.cardToSlot[card]);
-      }
-    }
+    int[] removed = table.clearAll();
+    for (int card : removed) deck.returnCard(card);
     for (Player player : players) {
       player.tokensCounter = 0;
     }
-    if (playerWhoClaimedSet != -1) {
-      players[playerWhoClaimedSet].foundSet = false;
-      players[playerWhoClaimedSet].getPlayerThread().interrupt();
-      updatePlayerWhoClaimedSet(-1);
-    }
-    isThereAnySets = env.util.findSets(deck, 1).size() > 0;
+    // the claims on the cards that were removed can no longer be committed
+    for (Claim claim; (claim = claims.poll()) != null;) claim.decide(
+      Claim.Verdict.STALE
+    );
+    isThereAnySets = deck.findSets(env.util, 1).size() > 0;
+    int placed = 0;
     if (!shouldFinish()) {
-      placeCardsOnTable();
+      // the returned cards are on top of the deck: shuffle them in, or the same cards would be dealt again
+      shuffleDeck();
+      placed = placeCardsOnTable();
     }
 
+    GameEvents.tableUnlocked(locked);
     table.lock.writeLock().unlock();
+    return removed.length + placed;
   }
 
   /**
@@ -320,13 +580,33 @@ public class Dealer implements Runnable {
 
     //display the winner
     env.ui.announceWinner(winnerPlayers);
+    recordResult();
   }
 
-  private void shuffleDeck() {
-    if (!shouldFinish()) Collections.shuffle(deck);
+  /**
+   * Records the scores of the game in the leaderboard.
+   */
+  private void recordResult() {
+    if (leaderboard == null) return;
+    int[] scores = new int[players.length];
+    for (Player player : players) scores[player.id] = player.score();
+    try {
+      leaderboard.record(env.config.playerNames, scores);
+      for (LeaderboardStore.Standing standing : leaderboard.top(3)) env.logger.info(
+        "leaderboard: " +
+        standing.name +
+        " " +
+        standing.total +
+        " points in " +
+        standing.games +
+        " games"
+      );
+    } catch (IOException e) {
+      env.logger.severe("error recording the game result: " + e.getMessage());
+    }
   }
 
-  public synchronized void updatePlayerWhoClaimedSet(int player) {
-    playerWhoClaimedSet = player;
+  private void shuffleDeck() {
+    if (!shouldFinish()) deck.shuffle();
   }
 }
@@ -0,0 +1,154 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+/**
+ * This class holds the cards that are left in the dealer's deck.
+ * The undealt cards are the first size entries of an int array: cards are dealt from and returned to the end of
+ * that region, and shuffling is done in place, so none of the deck operations allocate.
+ *
+ * @inv 0 <= size <= cards.length
+ */
+public class Deck {
+
+  /**
+   * A source of random numbers for shuffling the deck.
+   */
+  @FunctionalInterface
+  public interface RandomSource {
+    /**
+     * @param bound - the upper bound (exclusive), must be positive.
+     * @return - a random number between 0 (inclusive) and bound (exclusive).
+     */
+    int nextInt(int bound);
+  }
+
+  /**
+   * The card ids, the first size of which are the cards left in the deck.
+   */
+  private final int[] cards;
+
+  /**
+   * The number of cards left in the deck.
+   */
+  private int size;
+
+  /**
+   * The random source used for shuffling.
+   */
+  private final RandomSource random;
+
+  /**
+   * Creates a full deck (i.e. cards 0 to deckSize - 1).
+   *
+   * @param deckSize - the number of cards in the deck.
+   * @param random   - the random source used for shuffling.
+   */
+  public Deck(int deckSize, RandomSource random) {
+    this.cards = new int[deckSize];
+    for (int i = 0; i < deckSize; i++) cards[i] = i;
+    this.size = deckSize;
+    this.random = random;
+  }
+
+  /**
+   * Creates a full deck shuffled by a fast splittable random generator.
+   *
+   * @param deckSize - the number of cards in the deck.
+   * @param seed     - the seed of the random generator (negative for a random seed).
+   */
+  public Deck(int deckSize, long seed) {
+    this(
+      deckSize,
+      seed < 0
+        ? new SplittableRandom()::nextInt
+        : new SplittableRandom(seed)::nextInt
+    );
+  }
+
+  /**
+   * @return - the number of cards left in the deck.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return - true iff there are no cards left in the deck.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes the top card from the deck.
+   *
+   * @return - the card id.
+   * @throws NoSuchElementException if the deck is empty.
+   */
+  public int deal() {
+    if (size == 0) throw new NoSuchElementException("the deck is empty");
+    return cards[--size];
+  }
+
+  /**
+   * Removes a specific card from the deck (the card on top of the deck takes its place).
+   *
+   * @param card - the card id.
+   * @return - true iff the card was in the deck.
+   */
+  public boolean take(int card) {
+    for (int i = 0; i < size; i++) if (cards[i] == card) {
+      cards[i] = cards[--size];
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return - the cards left in the deck, from the bottom to the top.
+   */
+  public int[] cards() {
+    return Arrays.copyOf(cards, size);
+  }
+
+  /**
+   * Puts a card back on top of the deck.
+   *
+   * @param card - the card id (a card that was dealt from this deck).
+   * @throws IllegalStateException if the deck is already full.
+   */
+  public void returnCard(int card) {
+    if (size == cards.length) throw new IllegalStateException(
+      "the deck is full"
+    );
+    cards[size++] = card;
+  }
+
+  /**
+   * Shuffles the cards left in the deck in place (Fisher-Yates).
+   */
+  public void shuffle() {
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int card = cards[i];
+      cards[i] = cards[j];
+      cards[j] = card;
+    }
+  }
+
+  /**
+   * Finds up to count sets among the cards left in the deck.
+   *
+   * @param util  - the utilities object used to search for sets.
+   * @param count - the maximum number of sets to find.
+   * @return - a list of up to count sets.
+   */
+  public List<int[]> findSets(Util util, int count) {
+    return util.findSets(cards, size, count);
+  }
+}
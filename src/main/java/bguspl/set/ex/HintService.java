@@ -0,0 +1,182 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class serves the legal sets that are currently on the table.
+ * The sets are computed on demand by whichever thread asks for them and cached with the generation of the table
+ * snapshot they were computed on, so consumers share the result until the table changes. When only a few cards
+ * changed, the cached sets are updated instead of searching the whole table again.
+ */
+public class HintService {
+
+  /**
+   * The game environment object.
+   */
+  private final Env env;
+
+  /**
+   * The table the sets are found on.
+   */
+  private final Table table;
+
+  /**
+   * The snapshot the cached sets were computed on (null if none yet).
+   */
+  private TableSnapshot cachedSnapshot;
+
+  /**
+   * The sets on the table of the cached snapshot (each sorted by card id).
+   */
+  private List<int[]> cachedSets = Collections.emptyList();
+
+  public HintService(Env env, Table table) {
+    this.env = env;
+    this.table = table;
+  }
+
+  /**
+   * Returns all the legal sets on the table.
+   *
+   * @return - an unmodifiable list of sets, each containing the card ids of the set sorted in ascending order.
+   */
+  public List<int[]> sets() {
+    return sets(table.snapshot());
+  }
+
+  /**
+   * Returns all the legal sets on the table of a given snapshot.
+   *
+   * @param snapshot - a snapshot of the table.
+   * @return - an unmodifiable list of sets, each containing the card ids of the set sorted in ascending order.
+   */
+  public synchronized List<int[]> sets(TableSnapshot snapshot) {
+    if (
+      cachedSnapshot == null ||
+      cachedSnapshot.generation != snapshot.generation
+    ) {
+      cachedSets =
+        Collections.unmodifiableList(
+          cachedSnapshot == null
+            ? findAll(snapshot)
+            : update(cachedSnapshot, snapshot)
+        );
+      cachedSnapshot = snapshot;
+    }
+    return cachedSets;
+  }
+
+  /**
+   * @return - the generation of the table the cached sets were computed on (-1 if none yet).
+   */
+  public synchronized long cachedGeneration() {
+    return cachedSnapshot == null ? -1 : cachedSnapshot.generation;
+  }
+
+  private List<int[]> findAll(TableSnapshot snapshot) {
+    int[] cards = snapshot.cards();
+    return new ArrayList<>(
+      env.util.findSets(cards, cards.length, Integer.MAX_VALUE)
+    );
+  }
+
+  /**
+   * Updates the cached sets to a newer snapshot: drops the sets with cards that left the table and adds the sets
+   * with cards that joined it.
+   */
+  private List<int[]> update(TableSnapshot previous, TableSnapshot current) {
+    int[] removed = new int[current.slots()];
+    int[] added = new int[current.slots()];
+    int removedCount = 0, addedCount = 0;
+    for (int slot = 0; slot < current.slots(); slot++) {
+      if (previous.card(slot) == current.card(slot)) continue;
+      if (previous.hasCard(slot)) removed[removedCount++] = previous.card(slot);
+      if (current.hasCard(slot)) added[addedCount++] = current.card(slot);
+    }
+
+    int[] cards = current.cards();
+    // when most of the table changed (e.g. after a reshuffle) searching it all again is cheaper, and with 2 cards per
+    // set there is no card to look up
+    if (
+      2 * addedCount > cards.length || env.config.featureSize < 3
+    ) return findAll(current);
+
+    List<int[]> sets = new ArrayList<>(cachedSets.size());
+    for (int[] set : cachedSets) if (
+      !containsAny(set, removed, removedCount)
+    ) sets.add(set);
+    if (addedCount > 0) addSetsWithAddedCards(
+      cards,
+      added,
+      addedCount,
+      sets
+    );
+    return sets;
+  }
+
+  private static boolean contains(int[] cards, int count, int card) {
+    for (int i = 0; i < count; i++) if (cards[i] == card) return true;
+    return false;
+  }
+
+  private static boolean containsAny(int[] set, int[] cards, int count) {
+    for (int card : set) if (contains(cards, count, card)) return true;
+    return false;
+  }
+
+  /**
+   * Finds the sets that contain at least one of the added cards: the added cards are ordered first, so each of these
+   * sets is found once, from its first card in that order. The last card of a set is determined by the others, so only
+   * the combinations of an added card with r - 2 later cards are generated, and the card completing them is looked up
+   * among the cards after them. Only the sets found are allocated.
+   */
+  private void addSetsWithAddedCards(
+    int[] cards,
+    int[] added,
+    int addedCount,
+    List<int[]> sets
+  ) {
+    int r = env.config.featureSize;
+    int n = cards.length;
+    if (n < r) return;
+
+    int[] ordered = Arrays.copyOf(added, n);
+    int next = addedCount;
+    for (int card : cards) if (!contains(added, addedCount, card)) ordered[next++] = card;
+
+    // the cards sorted by id, and the position of each of them in the order
+    int[] byId = Arrays.copyOf(ordered, n);
+    Arrays.sort(byId);
+    int[] position = new int[n];
+    for (int i = 0; i < n; i++) position[Arrays.binarySearch(byId, ordered[i])] = i;
+
+    int k = r - 1;
+    int[] combination = new int[k];
+    int[] set = new int[r];
+    for (int first = 0; first < addedCount && first <= n - k; first++) {
+      for (int i = 0; i < k; i++) combination[i] = first + i;
+      while (true) {
+        for (int i = 0; i < k; i++) set[i] = ordered[combination[i]];
+        int last = env.util.completeSet(set);
+        int index = last < 0 ? -1 : Arrays.binarySearch(byId, last);
+        if (index >= 0 && position[index] > combination[k - 1]) {
+          int[] found = Arrays.copyOf(set, r);
+          found[k] = last;
+          Arrays.sort(found);
+          sets.add(found);
+        }
+
+        // generate next combination in lexicographic order (keeping the first card)
+        int t = k - 1;
+        while (t > 0 && combination[t] == n - k + t) --t;
+        if (t == 0) break;
+        combination[t]++;
+        for (int i = t + 1; i < k; i++) combination[i] = combination[i - 1] + 1;
+      }
+    }
+  }
+}
@@ -0,0 +1,450 @@
+package bguspl.set.ex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps the leaderboard of all the games played, across runs.
+ * Every game result is appended to a log file, and an in-memory index (the standing of every player, sorted by total
+ * score, and the most recent games) is updated with it. At startup the log is memory-mapped and replayed into the
+ * index; a torn record at the end of the log (e.g. after a crash) is cut off. Once enough game records accumulate,
+ * the log is compacted into one record per player plus the recent games.
+ * <p>
+ * Every record is [length: int][type: byte][payload][crc32 of type and payload: int].
+ */
+public class LeaderboardStore implements Closeable {
+
+  /**
+   * A game result: its players and scores are added to the standings.
+   */
+  private static final byte GAME = 1;
+
+  /**
+   * The standing of a player, written by a compaction.
+   */
+  private static final byte STANDING = 2;
+
+  /**
+   * A recent game written by a compaction (only restores the recent games, its scores are already in the standings).
+   */
+  private static final byte RECENT = 3;
+
+  /**
+   * The number of recent games kept.
+   */
+  public static final int RECENT_GAMES = 20;
+
+  /**
+   * The number of game records appended since the last compaction that triggers the next one.
+   */
+  private static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+
+  /**
+   * The standing of a player in the leaderboard.
+   */
+  public static final class Standing {
+
+    public final String name;
+    public final long total;
+    public final int games;
+    public final int wins;
+
+    Standing(String name, long total, int games, int wins) {
+      this.name = name;
+      this.total = total;
+      this.games = games;
+      this.wins = wins;
+    }
+  }
+
+  /**
+   * The result of a single game.
+   */
+  public static final class GameResult {
+
+    public final long endedMillis;
+    private final String[] names;
+    private final int[] scores;
+
+    GameResult(long endedMillis, String[] names, int[] scores) {
+      this.endedMillis = endedMillis;
+      this.names = names;
+      this.scores = scores;
+    }
+
+    public int players() {
+      return names.length;
+    }
+
+    public String name(int player) {
+      return names[player];
+    }
+
+    public int score(int player) {
+      return scores[player];
+    }
+
+    private int highscore() {
+      int highscore = 0;
+      for (int score : scores) highscore = Math.max(highscore, score);
+      return highscore;
+    }
+  }
+
+  private static final Comparator<Standing> RANKING = Comparator
+    .comparingLong((Standing standing) -> -standing.total)
+    .thenComparing(standing -> standing.name);
+
+  private final Path file;
+  private final int compactionThreshold;
+  private FileChannel log;
+
+  /**
+   * The index: the standing of each player by name, the standings sorted by rank and the recent games.
+   */
+  private final Map<String, Standing> standings = new HashMap<>();
+  private final TreeSet<Standing> ranking = new TreeSet<>(RANKING);
+  private final ArrayDeque<GameResult> recent = new ArrayDeque<>();
+
+  /**
+   * The number of game records in the log since it was last compacted.
+   */
+  private int uncompacted;
+
+  /**
+   * The buffer records are encoded in (grown on demand).
+   */
+  private ByteBuffer encoder = ByteBuffer.allocate(256);
+  private final CRC32 crc = new CRC32();
+
+  /**
+   * Opens the leaderboard stored in a file, creating it if needed.
+   *
+   * @param file - the log file.
+   * @throws IOException - if the log cannot be read or opened for appending.
+   */
+  public LeaderboardStore(Path file) throws IOException {
+    this(file, DEFAULT_COMPACTION_THRESHOLD);
+  }
+
+  LeaderboardStore(Path file, int compactionThreshold) throws IOException {
+    this.file = file;
+    this.compactionThreshold = compactionThreshold;
+    log =
+      FileChannel.open(
+        file,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+      );
+    long valid = recover();
+    if (valid < log.size()) log.truncate(valid);
+    log.position(valid);
+  }
+
+  /**
+   * Replays the log into the index.
+   *
+   * @return - the length of the valid prefix of the log.
+   */
+  private long recover() throws IOException {
+    long size = log.size();
+    if (size == 0) return 0;
+    MappedByteBuffer mapped = log.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    try {
+      return replayLog(mapped);
+    } finally {
+      // the log is truncated and appended to right after, so its mapping must not outlive the recovery
+      unmap(mapped);
+    }
+  }
+
+  /**
+   * Replays the valid records of a mapped log.
+   *
+   * @return - the length of the valid prefix of the log.
+   */
+  private long replayLog(MappedByteBuffer mapped) {
+    byte[] buffer = new byte[256];
+    while (mapped.remaining() >= 9) {
+      int start = mapped.position();
+      int length = mapped.getInt();
+      if (length < 1 || length > mapped.remaining() - 4) {
+        mapped.position(start);
+        break;
+      }
+      if (buffer.length < length) buffer = new byte[Math.max(length, 2 * buffer.length)];
+      mapped.get(buffer, 0, length);
+      crc.reset();
+      crc.update(buffer, 0, length);
+      if ((int) crc.getValue() != mapped.getInt()) {
+        mapped.position(start);
+        break;
+      }
+      replay(ByteBuffer.wrap(buffer, 0, length));
+    }
+    return mapped.position();
+  }
+
+  /**
+   * Releases the mapping of a buffer at once instead of when it is garbage collected (best effort: the JDK has no
+   * public API for it, so the mapping is left to the garbage collector if neither JDK internal method is available).
+   */
+  private static void unmap(MappedByteBuffer mapped) {
+    try {
+      // Java 9 and later
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafeClass
+        .getMethod("invokeCleaner", ByteBuffer.class)
+        .invoke(theUnsafe.get(null), mapped);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      try {
+        // Java 8
+        Method cleaner = mapped.getClass().getMethod("cleaner");
+        cleaner.setAccessible(true);
+        Object clean = cleaner.invoke(mapped);
+        if (clean != null) clean.getClass().getMethod("clean").invoke(clean);
+      } catch (ReflectiveOperationException | RuntimeException ignored) {}
+    }
+  }
+
+  private void replay(ByteBuffer record) {
+    byte type = record.get();
+    if (type == STANDING) {
+      String name = getString(record);
+      update(
+        new Standing(name, record.getLong(), record.getInt(), record.getInt())
+      );
+    } else if (type == GAME || type == RECENT) {
+      GameResult game = getGame(record);
+      if (type == GAME) {
+        add(game);
+        ++uncompacted;
+      } else remember(game);
+    }
+  }
+
+  /**
+   * Records the result of a game.
+   *
+   * @param names  - the names of the players.
+   * @param scores - the scores of the players.
+   * @throws IOException - if the result cannot be appended to the log.
+   */
+  public synchronized void record(String[] names, int[] scores)
+    throws IOException {
+    GameResult game = new GameResult(
+      System.currentTimeMillis(),
+      names.clone(),
+      scores.clone()
+    );
+    append(GAME, game);
+    add(game);
+    if (++uncompacted >= compactionThreshold) compact();
+  }
+
+  /**
+   * @param k - the number of standings.
+   * @return - the k top standings, best first.
+   */
+  public synchronized List<Standing> top(int k) {
+    List<Standing> top = new ArrayList<>(Math.min(k, ranking.size()));
+    for (Standing standing : ranking) {
+      if (top.size() == k) break;
+      top.add(standing);
+    }
+    return top;
+  }
+
+  /**
+   * @param name - the name of a player.
+   * @return - the standing of the player, or null if the player never played.
+   */
+  public synchronized Standing standing(String name) {
+    return standings.get(name);
+  }
+
+  /**
+   * @return - the most recent games, most recent first.
+   */
+  public synchronized List<GameResult> recentGames() {
+    return Collections.unmodifiableList(new ArrayList<>(recent));
+  }
+
+  /**
+   * Rewrites the log as one record per player plus the recent games, replacing the old log atomically.
+   *
+   * @throws IOException - if the compacted log cannot be written.
+   */
+  public synchronized void compact() throws IOException {
+    Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+    FileChannel old = log;
+    try (
+      FileChannel channel = FileChannel.open(
+        compacted,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE
+      )
+    ) {
+      log = channel;
+      for (Standing standing : standings.values()) append(standing);
+      List<GameResult> games = new ArrayList<>(recent);
+      Collections.reverse(games);
+      for (GameResult game : games) append(RECENT, game);
+      channel.force(true);
+    } finally {
+      log = old;
+    }
+    old.close();
+    try {
+      Files.move(
+        compacted,
+        file,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE
+      );
+    } finally {
+      // whether or not the compacted log replaced it, the log is appended to from its end
+      log =
+        FileChannel.open(
+          file,
+          StandardOpenOption.READ,
+          StandardOpenOption.WRITE
+        );
+      log.position(log.size());
+    }
+    Files.deleteIfExists(compacted);
+    uncompacted = 0;
+  }
+
+  /**
+   * Forces the log to the disk and closes it.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!log.isOpen()) return;
+    log.force(true);
+    log.close();
+  }
+
+  private void add(GameResult game) {
+    int highscore = game.highscore();
+    for (int player = 0; player < game.players(); player++) {
+      Standing standing = standings.get(game.names[player]);
+      update(
+        new Standing(
+          game.names[player],
+          (standing == null ? 0 : standing.total) + game.scores[player],
+          (standing == null ? 0 : standing.games) + 1,
+          (standing == null ? 0 : standing.wins) +
+          (game.scores[player] == highscore ? 1 : 0)
+        )
+      );
+    }
+    remember(game);
+  }
+
+  private void update(Standing standing) {
+    Standing previous = standings.put(standing.name, standing);
+    if (previous != null) ranking.remove(previous);
+    ranking.add(standing);
+  }
+
+  private void remember(GameResult game) {
+    recent.addFirst(game);
+    if (recent.size() > RECENT_GAMES) recent.removeLast();
+  }
+
+  private void append(byte type, GameResult game) throws IOException {
+    ByteBuffer record = begin(type);
+    record.putLong(game.endedMillis).putShort((short) game.players());
+    for (int player = 0; player < game.players(); player++) {
+      putString(game.names[player]);
+      ensure(4).putInt(game.scores[player]);
+    }
+    write();
+  }
+
+  private void append(Standing standing) throws IOException {
+    begin(STANDING);
+    putString(standing.name);
+    ensure(16)
+      .putLong(standing.total)
+      .putInt(standing.games)
+      .putInt(standing.wins);
+    write();
+  }
+
+  private static GameResult getGame(ByteBuffer record) {
+    long endedMillis = record.getLong();
+    int players = record.getShort();
+    String[] names = new String[players];
+    int[] scores = new int[players];
+    for (int player = 0; player < players; player++) {
+      names[player] = getString(record);
+      scores[player] = record.getInt();
+    }
+    return new GameResult(endedMillis, names, scores);
+  }
+
+  private static String getString(ByteBuffer record) {
+    byte[] bytes = new byte[record.getShort() & 0xFFFF];
+    record.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void putString(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    ensure(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+  }
+
+  private ByteBuffer begin(byte type) {
+    encoder.clear();
+    return ensure(13).putInt(0).put(type);
+  }
+
+  private ByteBuffer ensure(int bytes) {
+    if (encoder.remaining() < bytes + 4) {
+      ByteBuffer grown = ByteBuffer.allocate(
+        Math.max(2 * encoder.capacity(), encoder.position() + bytes + 4)
+      );
+      encoder.flip();
+      encoder = grown.put(encoder);
+    }
+    return encoder;
+  }
+
+  /**
+   * Completes the record in the encoder with its length and checksum and writes it to the log.
+   */
+  private void write() throws IOException {
+    int length = encoder.position() - 4;
+    crc.reset();
+    crc.update(encoder.array(), 4, length);
+    encoder.putInt(0, length).putInt((int) crc.getValue());
+    encoder.flip();
+    while (encoder.hasRemaining()) log.write(encoder);
+  }
+}
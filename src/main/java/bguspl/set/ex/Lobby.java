@@ -0,0 +1,287 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.UserInterface;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * This class matches the players waiting for a game.
+ * Waiting players are bucketed by skill band and by the number of players they want in their game. A game is formed
+ * as soon as a bucket holds enough players, so most decisions only touch a single bucket. A player that waited
+ * longer than the maximal wait is matched with whoever waits in the nearby skill bands, and the missing players are
+ * backfilled with computer players.
+ * <p>
+ * All the decisions are made under the lobby's lock, but the matched games are launched after it is released.
+ */
+public class Lobby {
+
+  /**
+   * Starts the games the lobby matched.
+   */
+  public interface Launcher {
+    /**
+     * Starts a game.
+     *
+     * @param match - the matched players.
+     */
+    void launch(Match match);
+  }
+
+  /**
+   * A player waiting in the lobby.
+   */
+  public static final class Ticket {
+
+    public final String name;
+    public final int skill;
+    public final int players;
+    private final long enqueuedNanos;
+    private final BiConsumer<Player, UserInterface> onStart;
+    private Bucket bucket;
+    private boolean done;
+
+    private Ticket(
+      String name,
+      int skill,
+      int players,
+      long enqueuedNanos,
+      BiConsumer<Player, UserInterface> onStart
+    ) {
+      this.name = name;
+      this.skill = skill;
+      this.players = players;
+      this.enqueuedNanos = enqueuedNanos;
+      this.onStart = onStart;
+    }
+
+    /**
+     * Called by the launcher when the game of the player starts.
+     *
+     * @param player - the player object the input of the player should be dispatched to.
+     * @param ui     - the user interface of the game (may be null).
+     */
+    public void started(Player player, UserInterface ui) {
+      if (onStart != null) onStart.accept(player, ui);
+    }
+  }
+
+  /**
+   * The players matched to a single game: the human players, backfilled with computer players.
+   */
+  public static final class Match {
+
+    public final List<Ticket> humans;
+    public final int computers;
+
+    private Match(List<Ticket> humans, int computers) {
+      this.humans = humans;
+      this.computers = computers;
+    }
+  }
+
+  /**
+   * The players waiting with the same skill band and game size.
+   */
+  private static final class Bucket {
+
+    private final int band;
+    private final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+
+    /**
+     * The number of tickets in the queue that are still waiting.
+     */
+    private int live;
+
+    private Bucket(int band) {
+      this.band = band;
+    }
+
+    private Ticket poll() {
+      Ticket ticket;
+      do ticket = waiting.pollFirst(); while (ticket != null && ticket.done);
+      if (ticket != null) {
+        ticket.done = true;
+        --live;
+      }
+      return ticket;
+    }
+  }
+
+  /**
+   * The number of adjacent skill bands (on each side) searched for players when a wait expires.
+   */
+  private static final int WIDENING = 2;
+
+  private final int skillBand;
+  private final long maxWaitNanos;
+  private final Launcher launcher;
+
+  /**
+   * The buckets, by skill band and game size.
+   */
+  private final Map<Long, Bucket> buckets = new HashMap<>();
+
+  /**
+   * All the tickets, in arrival order (the oldest waiting ticket is the first one not done).
+   */
+  private final ArrayDeque<Ticket> arrivals = new ArrayDeque<>();
+
+  /**
+   * The number of players waiting.
+   */
+  private int waiting;
+
+  public Lobby(Config config, Launcher launcher) {
+    this(config.lobbySkillBand, config.lobbyMaxWaitMillis, launcher);
+  }
+
+  /**
+   * @param skillBand     - the width of a skill band.
+   * @param maxWaitMillis - the maximal time a player waits before being matched with nearby skill bands and computers.
+   * @param launcher      - starts the matched games.
+   */
+  public Lobby(int skillBand, long maxWaitMillis, Launcher launcher) {
+    this.skillBand = Math.max(skillBand, 1);
+    this.maxWaitNanos = maxWaitMillis * 1_000_000L;
+    this.launcher = launcher;
+  }
+
+  /**
+   * Adds a player to the lobby, starting a game if the player completes one.
+   *
+   * @param name    - the name of the player.
+   * @param skill   - the skill rating of the player.
+   * @param players - the number of players the player wants in the game (including itself).
+   * @param onStart - called with the player object of the player and the user interface of its game when the game
+   *                starts (may be null).
+   * @return - the ticket of the player.
+   */
+  public Ticket enqueue(
+    String name,
+    int skill,
+    int players,
+    BiConsumer<Player, UserInterface> onStart
+  ) {
+    return enqueue(name, skill, players, onStart, System.nanoTime());
+  }
+
+  Ticket enqueue(
+    String name,
+    int skill,
+    int players,
+    BiConsumer<Player, UserInterface> onStart,
+    long nowNanos
+  ) {
+    if (players < 1) throw new IllegalArgumentException(
+      "a game needs at least 1 player"
+    );
+    Ticket ticket = new Ticket(name, skill, players, nowNanos, onStart);
+    Match match = null;
+    synchronized (this) {
+      Bucket bucket = bucket(Math.floorDiv(skill, skillBand), players, true);
+      ticket.bucket = bucket;
+      bucket.waiting.addLast(ticket);
+      ++bucket.live;
+      arrivals.addLast(ticket);
+      ++waiting;
+      if (bucket.live >= players) match = take(bucket, players);
+    }
+    if (match != null) launcher.launch(match);
+    return ticket;
+  }
+
+  /**
+   * Removes a waiting player from the lobby.
+   *
+   * @param ticket - the ticket of the player.
+   * @return - true iff the player was still waiting (i.e. was not matched yet).
+   */
+  public synchronized boolean cancel(Ticket ticket) {
+    if (ticket.done) return false;
+    ticket.done = true;
+    --ticket.bucket.live;
+    --waiting;
+    return true;
+  }
+
+  /**
+   * Matches the players that waited for too long (should be called periodically).
+   *
+   * @return - the number of games started.
+   */
+  public int expire() {
+    return expire(System.nanoTime());
+  }
+
+  int expire(long nowNanos) {
+    List<Match> matches = new ArrayList<>();
+    synchronized (this) {
+      while (!arrivals.isEmpty()) {
+        Ticket oldest = arrivals.peekFirst();
+        if (oldest.done) {
+          arrivals.pollFirst();
+          continue;
+        }
+        if (nowNanos - oldest.enqueuedNanos < maxWaitNanos) break;
+        matches.add(widen(oldest));
+      }
+    }
+    for (Match match : matches) launcher.launch(match);
+    return matches.size();
+  }
+
+  /**
+   * @return - the number of players waiting.
+   */
+  public synchronized int waiting() {
+    return waiting;
+  }
+
+  /**
+   * Matches a player with the nearest skill bands, backfilling with computers.
+   */
+  private Match widen(Ticket ticket) {
+    Bucket home = ticket.bucket;
+    List<Ticket> humans = new ArrayList<>(ticket.players);
+    take(home, ticket.players, humans);
+    for (
+      int distance = 1;
+      distance <= WIDENING && humans.size() < ticket.players;
+      distance++
+    ) {
+      for (int band : new int[] { home.band - distance, home.band + distance }) {
+        Bucket bucket = bucket(band, ticket.players, false);
+        if (bucket != null) take(bucket, ticket.players, humans);
+      }
+    }
+    return new Match(humans, ticket.players - humans.size());
+  }
+
+  private Match take(Bucket bucket, int players) {
+    List<Ticket> humans = new ArrayList<>(players);
+    take(bucket, players, humans);
+    return new Match(humans, 0);
+  }
+
+  private void take(Bucket bucket, int players, List<Ticket> humans) {
+    while (humans.size() < players && bucket.live > 0) {
+      humans.add(bucket.poll());
+      --waiting;
+    }
+  }
+
+  private Bucket bucket(int band, int players, boolean create) {
+    long key = ((long) players << 32) | (band & 0xFFFFFFFFL);
+    Bucket bucket = buckets.get(key);
+    if (bucket == null && create) {
+      bucket = new Bucket(band);
+      buckets.put(key, bucket);
+    }
+    return bucket;
+  }
+}
@@ -0,0 +1,112 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.GameLifecycle;
+import bguspl.set.LatencyTracer;
+import bguspl.set.TimerWheel;
+import bguspl.set.UserInterface;
+import bguspl.set.UserInterfaceDecorator;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * This class starts the games matched by the lobby.
+ * Every game gets its own configuration (the base configuration with the players of the match), table and dealer,
+ * and runs on its own dealer thread (started by the lifecycle of the server, which stops it on shutdown). The human
+ * players of the match are handed their player objects and the user interface of their game, so their input can be
+ * dispatched to the game and they can follow it.
+ */
+public class LobbyGames implements Lobby.Launcher {
+
+  private final Logger logger;
+
+  /**
+   * The configuration every game is based on.
+   */
+  private final Properties base;
+
+  /**
+   * Creates the user interface of a game (may return null for none).
+   */
+  private final Function<Config, UserInterface> uiFactory;
+
+  /**
+   * The timer shared by all the games.
+   */
+  private final TimerWheel timers;
+
+  /**
+   * Starts the dealer threads of the games.
+   */
+  private final GameLifecycle lifecycle;
+
+  private final AtomicInteger games = new AtomicInteger();
+
+  public LobbyGames(
+    Logger logger,
+    Properties base,
+    Function<Config, UserInterface> uiFactory,
+    TimerWheel timers,
+    GameLifecycle lifecycle
+  ) {
+    this.logger = logger;
+    this.base = base;
+    this.uiFactory = uiFactory;
+    this.timers = timers;
+    this.lifecycle = lifecycle;
+  }
+
+  @Override
+  public void launch(Lobby.Match match) {
+    int game = games.incrementAndGet();
+    List<Lobby.Ticket> humans = match.humans;
+
+    Properties properties = new Properties();
+    properties.putAll(base);
+    properties.setProperty("HumanPlayers", Integer.toString(humans.size()));
+    properties.setProperty("ComputerPlayers", Integer.toString(match.computers));
+    StringBuilder names = new StringBuilder();
+    for (Lobby.Ticket ticket : humans) names.append(ticket.name).append(',');
+    for (int i = 1; i <= match.computers; i++) names
+      .append("Computer ")
+      .append(i)
+      .append(',');
+    properties.setProperty("PlayerNames", names.toString());
+    Config config = new Config(logger, properties);
+
+    Util util = new UtilImpl(config);
+    UserInterface gameUi = uiFactory.apply(config);
+    UserInterface ui = new UserInterfaceDecorator(logger, util, gameUi);
+    Env env = new Env(
+      logger,
+      config,
+      ui,
+      util,
+      new LatencyTracer(config),
+      timers
+    );
+    Table table = new Table(env);
+    Player[] players = new Player[config.players];
+    Dealer dealer = new Dealer(env, table, players);
+    for (int i = 0; i < players.length; i++) players[i] =
+      new Player(env, dealer, table, i, i < humans.size());
+    for (int i = 0; i < humans.size(); i++) humans.get(i).started(players[i], gameUi);
+
+    logger.info(
+      "lobby starting game " +
+      game +
+      " with " +
+      humans.size() +
+      " human and " +
+      match.computers +
+      " computer players"
+    );
+    lifecycle.start("dealer-" + game, dealer, dealer::terminate);
+  }
+}
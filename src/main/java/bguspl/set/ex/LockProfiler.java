@@ -0,0 +1,305 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class creates the locks of the game, and profiles them when enabled.
+ * A profiled lock counts its acquisitions and keeps histograms (power of two nanosecond buckets) of the time threads
+ * waited for it and the time they held it. The call site of every contended acquisition is counted, so the report
+ * shows who waits for what. Locks created under the same name (e.g. the stripes of the slot locks) share their
+ * statistics. The uncontended path only adds a tryLock and two clock reads; the stack is walked only on contention.
+ */
+public class LockProfiler {
+
+  private static final int BUCKETS = Long.SIZE;
+
+  /**
+   * The number of call sites shown per lock in the report.
+   */
+  private static final int TOP_SITES = 3;
+
+  /**
+   * The statistics of the locks with the same name.
+   */
+  private static final class Stats {
+
+    private final String name;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final AtomicLongArray waits = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray holds = new AtomicLongArray(BUCKETS);
+    private final Map<String, LongAdder> sites = new ConcurrentHashMap<>();
+
+    private Stats(String name) {
+      this.name = name;
+    }
+
+    private void contended(long waitNanos) {
+      contended.increment();
+      record(waits, waitNanos);
+      sites.computeIfAbsent(callSite(), site -> new LongAdder()).increment();
+    }
+  }
+
+  private final boolean enabled;
+  private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+  /**
+   * @param enabled - true iff the locks created should be profiled.
+   */
+  public LockProfiler(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return - true iff the locks are profiled.
+   */
+  public boolean enabled() {
+    return enabled;
+  }
+
+  /**
+   * Creates a (reentrant) lock.
+   *
+   * @param name - the name the lock is reported under.
+   * @return - the lock.
+   */
+  public Lock lock(String name) {
+    ReentrantLock lock = new ReentrantLock();
+    return enabled ? new ProfiledLock(lock, stats(name)) : lock;
+  }
+
+  /**
+   * Creates a (reentrant) read-write lock.
+   *
+   * @param name - the name the lock is reported under (its read and write locks are reported separately).
+   * @return - the lock.
+   */
+  public ReadWriteLock readWriteLock(String name) {
+    ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    if (!enabled) return lock;
+    Lock read = new ProfiledLock(lock.readLock(), stats(name + ".read"));
+    Lock write = new ProfiledLock(lock.writeLock(), stats(name + ".write"));
+    return new ReadWriteLock() {
+      @Override
+      public Lock readLock() {
+        return read;
+      }
+
+      @Override
+      public Lock writeLock() {
+        return write;
+      }
+    };
+  }
+
+  private Stats stats(String name) {
+    return stats.computeIfAbsent(name, Stats::new);
+  }
+
+  /**
+   * A lock that profiles the lock it wraps.
+   */
+  private static final class ProfiledLock implements Lock {
+
+    private final Lock lock;
+    private final Stats stats;
+
+    /**
+     * The depth and the acquisition time of the current thread's hold (the lock may be reentrant or shared).
+     */
+    private final ThreadLocal<long[]> held = ThreadLocal.withInitial(() ->
+      new long[2]
+    );
+
+    private ProfiledLock(Lock lock, Stats stats) {
+      this.lock = lock;
+      this.stats = stats;
+    }
+
+    @Override
+    public void lock() {
+      if (!lock.tryLock()) {
+        long start = System.nanoTime();
+        lock.lock();
+        stats.contended(System.nanoTime() - start);
+      }
+      acquired();
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      if (!lock.tryLock()) {
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        stats.contended(System.nanoTime() - start);
+      }
+      acquired();
+    }
+
+    @Override
+    public boolean tryLock() {
+      if (!lock.tryLock()) return false;
+      acquired();
+      return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit)
+      throws InterruptedException {
+      if (!lock.tryLock()) {
+        long start = System.nanoTime();
+        if (!lock.tryLock(time, unit)) return false;
+        stats.contended(System.nanoTime() - start);
+      }
+      acquired();
+      return true;
+    }
+
+    @Override
+    public void unlock() {
+      long[] hold = held.get();
+      if (--hold[0] == 0) record(stats.holds, System.nanoTime() - hold[1]);
+      lock.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+      return lock.newCondition();
+    }
+
+    private void acquired() {
+      stats.acquisitions.increment();
+      long[] hold = held.get();
+      if (hold[0]++ == 0) hold[1] = System.nanoTime();
+    }
+  }
+
+  private static void record(AtomicLongArray histogram, long nanos) {
+    int bucket = nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+    histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+  }
+
+  /**
+   * @return - the first frame of the stack outside this class, as class.method:line.
+   */
+  private static String callSite() {
+    for (StackTraceElement frame : new Throwable().getStackTrace()) {
+      String name = frame.getClassName();
+      if (
+        name.equals(LockProfiler.class.getName()) ||
+        name.startsWith(LockProfiler.class.getName() + "$")
+      ) continue;
+      return (
+        name +
+        "." +
+        frame.getMethodName() +
+        ":" +
+        frame.getLineNumber()
+      );
+    }
+    return "unknown";
+  }
+
+  /**
+   * @param name       - the name of the lock.
+   * @param hold       - true for the hold time, false for the wait time of the contended acquisitions.
+   * @param percentile - the percentile, between 0 and 100.
+   * @return - an upper bound of the time at the percentile, in nanoseconds (0 if no samples).
+   */
+  public long percentileNanos(String name, boolean hold, double percentile) {
+    Stats lock = stats.get(name);
+    if (lock == null) return 0;
+    AtomicLongArray histogram = hold ? lock.holds : lock.waits;
+    long samples = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) samples +=
+      histogram.get(bucket);
+    if (samples == 0) return 0;
+    long rank = Math.max((long) Math.ceil(samples * percentile / 100.0), 1);
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += histogram.get(bucket);
+      if (seen >= rank) return bucket == BUCKETS - 1
+        ? Long.MAX_VALUE
+        : 1L << bucket;
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * @param name - the name of the lock.
+   * @return - the number of times the lock was acquired, and the number of those that waited for it.
+   */
+  public long[] acquisitions(String name) {
+    Stats lock = stats.get(name);
+    return lock == null
+      ? new long[2]
+      : new long[] { lock.acquisitions.sum(), lock.contended.sum() };
+  }
+
+  /**
+   * @param name - the name of the lock.
+   * @return - the call sites that waited for the lock, the most frequent first (up to TOP_SITES).
+   */
+  public List<String> topSites(String name) {
+    List<String> top = new ArrayList<>();
+    Stats lock = stats.get(name);
+    if (lock == null) return top;
+    lock.sites
+      .entrySet()
+      .stream()
+      .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+      .limit(TOP_SITES)
+      .forEach(site ->
+        top.add(site.getKey() + " (" + site.getValue().sum() + ")")
+      );
+    return top;
+  }
+
+  /**
+   * @return - a summary of every lock: acquisitions, contention, wait and hold times and the top contending sites.
+   */
+  public String report() {
+    StringBuilder report = new StringBuilder(
+      "lock contention (p50/p99 in microseconds):"
+    );
+    stats
+      .keySet()
+      .stream()
+      .sorted()
+      .forEach(name -> {
+        long[] acquisitions = acquisitions(name);
+        report
+          .append(System.lineSeparator())
+          .append(name)
+          .append(": acquired=")
+          .append(acquisitions[0])
+          .append(" contended=")
+          .append(acquisitions[1])
+          .append(" wait=")
+          .append(percentileNanos(name, false, 50) / 1000)
+          .append('/')
+          .append(percentileNanos(name, false, 99) / 1000)
+          .append(" hold=")
+          .append(percentileNanos(name, true, 50) / 1000)
+          .append('/')
+          .append(percentileNanos(name, true, 99) / 1000);
+        for (String site : topSites(name)) report
+          .append(System.lineSeparator())
+          .append("  waited at ")
+          .append(site);
+      });
+    return report.toString();
+  }
+}
@@ -1,6 +1,7 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
 import java.time.Year;
 import java.util.List;
 import java.util.Random;
@@ -38,13 +39,18 @@ public class Player implements Runnable {
   /**
    * The thread representing the current player.
    */
-  private Thread playerThread;
+  private volatile Thread playerThread;
 
   /**
    * The thread of the AI (computer) player (an additional thread used to generate key presses).
    */
   private Thread aiThread;
 
+  /**
+   * The heartbeat of the player thread, beaten on every iteration of its loop and before waiting for a verdict.
+   */
+  private Watchdog.Heartbeat heartbeat;
+
   /**
    * True iff the player is human (not a computer player).
    */
@@ -60,15 +66,23 @@ public class Player implements Runnable {
    */
   private int score;
 
+  /**
+   * True iff the player is frozen (after a point or a penalty) and its key presses are ignored.
+   */
+  private volatile boolean frozen;
+
+  /**
+   * The number of penalties the player got.
+   */
+  private int penalties;
+
   /**
    * Queue for saving key actions
    */
-  private ConcurrentLinkedQueue<Integer> queueActions;
+  private ConcurrentLinkedQueue<KeyPress> queueActions;
 
   public int tokensCounter;
 
-  public boolean foundSet;
-
   Object counterTokenLock;
 
   /**
@@ -92,7 +106,6 @@ public class Player implements Runnable {
     this.dealer = dealer;
     this.queueActions = new ConcurrentLinkedQueue<>();
     tokensCounter = 0;
-    foundSet = false;
     counterTokenLock = new Object();
   }
 
@@ -105,14 +118,18 @@ public class Player implements Runnable {
     env.logger.info(
       "thread " + Thread.currentThread().getName() + " starting."
     );
+    heartbeat = dealer.watchdog().register("player-" + id, playerThread);
     if (!human) createArtificialIntelligence();
 
     while (!terminate) {
+      heartbeat.beat();
       // checking if the queue is empty
-      if (queueActions.size() > 0) {
+      if (!frozen && queueActions.size() > 0) {
         //enqueing action
-        int slot = queueActions.remove();
-        if (table.slotToCard[slot] != null) {
+        KeyPress press = queueActions.remove();
+        int slot = press.slot;
+        env.tracer.dequeued(id, press.stamp);
+        if (table.snapshot().hasCard(slot)) {
           //trying to remove the token
           if (!table.removeToken(id, slot)) {
             // the token isnt removed
@@ -120,7 +137,7 @@ public class Player implements Runnable {
             if (tokensCounter < env.config.featureSize) {
               //placing the token
               table.placeToken(id, slot);
-              if (table.slotToCard(slot) != null) tokensCounter++;
+              if (table.snapshot().hasCard(slot)) tokensCounter++;
               //checking if we put right now 3 tokens and then claim a set
               if (tokensCounter == env.config.featureSize) claimSet();
             }
@@ -130,8 +147,10 @@ public class Player implements Runnable {
           }
           //release readwritelock
         }
+        env.tracer.done(id);
       }
     }
+    dealer.watchdog().unregister(heartbeat);
 
     env.logger.info(
       "thread " + Thread.currentThread().getName() + " terminated."
@@ -146,27 +165,32 @@ public class Player implements Runnable {
   private void createArtificialIntelligence() {
     Random rand = new Random();
     // note: this is a very, very smart AI (!)
+    // stopped by an interrupt, before the player thread that started it
     aiThread =
-      new Thread(
-        () -> {
-          env.logger.info(
-            "thread " + Thread.currentThread().getName() + " starting."
-          );
-          while (!terminate) {
-            synchronized (this) {
-              try {
-                Thread.sleep(0);
-                keyPressed(rand.nextInt(env.config.tableSize));
-              } catch (InterruptedException e) {}
+      dealer
+        .lifecycle()
+        .start(
+          "computer-" + id,
+          () -> {
+            env.logger.info(
+              "thread " + Thread.currentThread().getName() + " starting."
+            );
+            while (!terminate && !Thread.currentThread().isInterrupted()) {
+              synchronized (this) {
+                try {
+                  Thread.sleep(env.config.computerActionMillis);
+                  keyPressed(rand.nextInt(env.config.tableSize));
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              }
             }
-          }
-          env.logger.info(
-            "thread " + Thread.currentThread().getName() + " terminated."
-          );
-        },
-        "computer-" + id
-      );
-    aiThread.start();
+            env.logger.info(
+              "thread " + Thread.currentThread().getName() + " terminated."
+            );
+          },
+          null
+        );
   }
 
   /**
@@ -174,6 +198,9 @@ public class Player implements Runnable {
    */
   public void terminate() {
     terminate = true;
+    // wakes the player up if it waits for a verdict
+    Thread thread = playerThread;
+    if (thread != null) thread.interrupt();
   }
 
   /**
@@ -182,7 +209,24 @@ public class Player implements Runnable {
    * @param slot - the slot corresponding to the key pressed.
    */
   public void keyPressed(int slot) {
-    if (queueActions.size() <= env.config.featureSize) queueActions.add(slot);
+    if (frozen) return;
+    if (queueActions.size() <= env.config.featureSize) queueActions.add(
+      new KeyPress(slot, env.tracer.stamp())
+    );
+  }
+
+  /**
+   * A queued key press, with the time stamp used to trace its latency.
+   */
+  private static final class KeyPress {
+
+    private final int slot;
+    private final long stamp;
+
+    private KeyPress(int slot, long stamp) {
+      this.slot = slot;
+      this.stamp = stamp;
+    }
   }
 
   /**
@@ -192,90 +236,125 @@ public class Player implements Runnable {
    * @post - the player's score is updated in the ui.
    */
   public void point() {
-    try {
-      int ignored = table.countCards(); // this part is just for demonstration in the unit tests
-      // setting the score in the ui
-      env.ui.setScore(id, ++score);
-      // sleeping for 1 sec * pointFreezeMs
-      for (int i = 0; i < env.config.pointFreezeMillis / 1000; i++) {
-        // updating the timer
-        env.ui.setFreeze(id, env.config.pointFreezeMillis - i * 1000);
-        //sleep for another sec;
-        Thread.sleep(1000);
-      }
-      // unfreeze
-      env.ui.setFreeze(id, 0);
-      //clearing the queue actions.
-      queueActions.clear();
-    } catch (InterruptedException e) {
-      if (terminate) return;
-    }
+    int ignored = table.countCards(); // this part is just for demonstration in the unit tests
+    // setting the score in the ui
+    env.ui.setScore(id, ++score);
+    freeze(env.config.pointFreezeMillis, false);
   }
 
   /**
    * Penalize a player and perform other related actions.
    */
   public void penalty() {
-    try {
+    ++penalties;
+    freeze(env.config.penaltyFreezeMillis, true);
+  }
+
+  /**
+   * @return - true iff the player is frozen.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Freezes the player: its key presses are ignored until the freeze expires on the game's timer.
+   *
+   * @param millis  - the duration of the freeze.
+   * @param penalty - true iff the player is frozen for a penalty.
+   */
+  private void freeze(long millis, boolean penalty) {
+    queueActions.clear();
+    if (millis <= 0) return;
+    frozen = true;
+    long until = System.currentTimeMillis() + millis;
+    Object event = GameEvents.freezeStarted(id, millis, penalty);
+    env.ui.setFreeze(id, millis);
+    scheduleFreezeTick(until, millis, event);
+  }
+
+  // the freeze display is updated whenever the remaining time crosses a whole second
+  private void scheduleFreezeTick(long until, long remaining, Object event) {
+    long delay = remaining % 1000 == 0 ? 1000 : remaining % 1000;
+    env.timers.schedule(delay, () -> freezeTick(until, event));
+  }
+
+  private void freezeTick(long until, Object event) {
+    long remaining = until - System.currentTimeMillis();
+    if (remaining <= 0 || terminate) {
+      // unfreeze and clear action queue
       queueActions.clear();
-    } finally {
-      try {
-        // sleeping for freeze time like in point
-        for (int i = 0; i < env.config.penaltyFreezeMillis / 1000; i++) {
-          env.ui.setFreeze(id, env.config.penaltyFreezeMillis - i * 1000);
-          Thread.sleep(1000);
-        }
-        // unfreeze and clear action queue
-        env.ui.setFreeze(id, 0);
-        queueActions.clear();
-      } catch (InterruptedException e) {
-        if (terminate) return;
-      }
+      frozen = false;
+      env.ui.setFreeze(id, 0);
+      GameEvents.freezeEnded(event);
+      return;
     }
+    // the wheel never runs a task early, so round the remaining time up to the second it is in
+    env.ui.setFreeze(id, (remaining + 999) / 1000 * 1000);
+    scheduleFreezeTick(until, remaining, event);
   }
 
   public int score() {
     return score;
   }
 
+  /**
+   * @return - the number of penalties the player got.
+   */
+  public int penalties() {
+    return penalties;
+  }
+
   public Thread getPlayerThread() {
     return playerThread;
   }
 
+  /**
+   * @return - the thread generating the key presses of a computer player (null for a human player).
+   */
+  public Thread getAiThread() {
+    return aiThread;
+  }
+
   public boolean allTokensPlaced() {
     return tokensCounter == env.config.featureSize;
   }
 
+  /**
+   * Claims the set marked by the player's tokens. The claim is validated against a snapshot of the table on the
+   * player's thread: an illegal set is penalized right away, and only a legal set is sent to the dealer to commit.
+   * When the dealer has claim validator workers, they check the set instead.
+   */
   public void claimSet() {
-    try {
-      //initilizing for not finding a set
-      this.foundSet = false;
-      //accuire the semaphore
-      dealer.setSempahore.acquire();
-      // check that no cards from the set were removed (by other player completing a set just before)
-      if (!allTokensPlaced()) {
-        // if my tokens are removed i'll release the semaphore and notify all players that want to claim set
-        dealer.setSempahore.release();
+    long claimed = env.tracer.stamp();
+    // take the snapshot first: a card removed after it also takes the player's token away
+    TableSnapshot snapshot = table.snapshot();
+    int[] slots = table.getTokenSlots(id);
+    if (slots.length != env.config.featureSize) return;
+    int[] cards = new int[slots.length];
+    for (int i = 0; i < slots.length; i++) {
+      cards[i] = snapshot.card(slots[i]);
+      if (cards[i] == TableSnapshot.NO_CARD) return;
+    }
+
+    Object event = GameEvents.claimStarted(id, slots);
+    Claim.Verdict verdict = Claim.Verdict.PENALTY;
+    if (dealer.validatesClaims() || env.util.testSet(cards)) {
+      Claim claim = new Claim(id, snapshot.generation, slots, cards);
+      // the wait for the verdict counts from here: a dealer that never decides stalls this player
+      heartbeat.beat();
+      dealer.submit(claim);
+      try {
+        verdict = claim.await();
+      } catch (InterruptedException e) {
         return;
       }
-      dealer.updatePlayerWhoClaimedSet(id);
-      // waiting for the dealer to check my set
-      synchronized (dealer.setSempahore) {
-        dealer.dealerThread.interrupt();
-        while (true) {
-          // trying to wait for the dealer and if we didnt successed of catching him we notify him again after 3 ms
-          dealer.setSempahore.wait(100);
-          dealer.updatePlayerWhoClaimedSet(id);
-          dealer.dealerThread.interrupt();
-        }
-      }
-    } catch (InterruptedException e) {
-      // the dealer stopped checking my set now ill check if my foundset flag has changed
-      if (terminate) return;
-      dealer.setSempahore.release();
-      if (foundSet) point(); else penalty();
     }
-    // realase the semaphore
-
+    if (terminate) return;
+    env.tracer.verdict(id, claimed);
+    GameEvents.claimDecided(event, verdict.name());
+    if (verdict == Claim.Verdict.POINT) point(); else if (
+      verdict == Claim.Verdict.PENALTY
+    ) penalty();
   }
 }
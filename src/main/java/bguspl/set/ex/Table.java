@@ -1,19 +1,28 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-// import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
+ * The table scales to hundreds of slots and players: the slots hold primitive card ids (NO_CARD if empty), the tokens
+ * on each slot are a bitset of players, and the slots and players are guarded by a fixed number of striped locks
+ * (sized to the number of cores) instead of a monitor each.
  *
- * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv slotToCard[x] == y iff cardToSlot.get(y) == x
  */
 public class Table {
 
@@ -23,63 +32,119 @@ public class Table {
   private final Env env;
 
   /**
-   * Mapping between a slot and the card placed in it (null if none).
+   * Mapping between a slot and the card placed in it (NO_CARD if none).
    */
-  protected final Integer[] slotToCard; // card per slot (if any)
+  protected final int[] slotToCard; // card per slot (if any)
 
   /**
-   * Mapping between a card and the slot it is in (null if none).
+   * Mapping between a card and the slot it is in (no entry if none).
+   * Only the cards on the table are mapped, so the size does not depend on the size of the deck.
    */
-  protected final Integer[] cardToSlot; // slot per card (if any)
+  protected final Map<Integer, Integer> cardToSlot; // slot per card (if any)
 
-  /*
-   * DataStructure to hold the tokens
-   */
-  protected LinkedList<Integer>[] tokens;
   /**
-   * data structure to hold all the playersTokens for each player
+   * The players that placed a token on each slot, as a bitset indexed [slot][player / 64] (guarded by the slot's lock).
    */
-  public LinkedList<Integer>[] playersTokens;
-  /*
-   * objects to sync for slots usage
+  private final long[][] slotTokens;
+
+  /**
+   * The slots each player placed its tokens on, in placement order, and the number of the tokens (guarded by the
+   * player's lock).
    */
-  public Object[] slotLocks;
+  private final int[][] playerTokens;
+  private final int[] playerTokenCounts;
 
-  // objects to sync for playerToken usage
+  /**
+   * The striped locks of the slots and of the players. A slot lock is always taken before a player lock.
+   */
+  private final Lock[] slotLocks;
+  private final Lock[] playerLocks;
 
-  public Object[] playersLock;
+  /**
+   * Creates the locks of the table (profiling them if enabled in the config).
+   */
+  private final LockProfiler lockProfiler;
 
   public ReadWriteLock lock; // for purpuse to make sure when the dealer replaces cards no one will enter the table
 
+  /**
+   * The latest snapshot of the cards on the table (replaced, never modified, on every change).
+   */
+  private volatile TableSnapshot snapshot;
+
+  /**
+   * Object to sync the publication of snapshots (readers never take it).
+   */
+  private final Object snapshotLock = new Object();
+
+  /**
+   * The legal sets on the table, cached per snapshot.
+   */
+  private final HintService hintService;
+
+  /**
+   * The generation of the last table whose hints were logged (-1 if none).
+   */
+  private final AtomicLong hintedGeneration = new AtomicLong(-1);
+
+  /**
+   * The thread the hints are searched and logged on, so a long search delays neither the dealer nor the timer's
+   * countdown ticks and animations (null if the hints are off). Its thread exits when idle.
+   */
+  private final ExecutorService hintExecutor;
+
+  /**
+   * True iff hints are queued on the hint thread and did not start yet (later table changes join them).
+   */
+  private final AtomicBoolean hintsQueued = new AtomicBoolean();
+
+  /**
+   * The time the last scheduled card animation step is shown at (guarded by animationLock).
+   */
+  private long animationEnd;
+
+  private final Object animationLock = new Object();
+
   /**
    * Constructor for testing.
    *
    * @param env        - the game environment objects.
-   * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-   * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+   * @param slotToCard - mapping between a slot and the card placed in it (NO_CARD if none).
+   * @param cardToSlot - mapping between a card and the slot it is in (no entry if none).
    */
-  public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+  public Table(Env env, int[] slotToCard, Map<Integer, Integer> cardToSlot) {
     this.env = env;
     this.slotToCard = slotToCard;
     this.cardToSlot = cardToSlot;
-    this.tokens = new LinkedList[env.config.tableSize];
-    for (int i = 0; i < env.config.tableSize; i++) {
-      tokens[i] = new LinkedList<Integer>();
-    }
-    this.playersTokens = new LinkedList[env.config.players];
-    for (int i = 0; i < env.config.players; i++) {
-      playersTokens[i] = new LinkedList<Integer>();
-    }
-    this.slotLocks = new Object[env.config.tableSize];
-    for (int i = 0; i < env.config.tableSize; i++) {
-      slotLocks[i] = new Object();
-    }
+    this.slotTokens =
+      new long[env.config.tableSize][(env.config.players + Long.SIZE - 1) /
+        Long.SIZE];
+    this.playerTokens = new int[env.config.players][env.config.featureSize];
+    this.playerTokenCounts = new int[env.config.players];
+    this.lockProfiler = new LockProfiler(env.config.lockProfiling);
+    this.slotLocks = stripes(env.config.tableSize, "slot");
+    this.playerLocks = stripes(env.config.players, "player");
+    this.lock = lockProfiler.readWriteLock("table");
+    this.snapshot = new TableSnapshot(0, slotToCard.clone());
+    this.hintService = new HintService(env, this);
+    this.hintExecutor = env.config.hints ? hintExecutor() : null;
+  }
 
-    this.playersLock = new Object[env.config.players];
-    for (int i = 0; i < env.config.players; i++) {
-      playersLock[i] = new Object();
-    }
-    this.lock = new ReentrantReadWriteLock();
+  private static ExecutorService hintExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      1,
+      1,
+      1,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(),
+      task -> {
+        Thread thread = new Thread(task, "hints");
+        thread.setDaemon(true);
+        return thread;
+      }
+    );
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   /**
@@ -90,61 +155,117 @@ public class Table {
   public Table(Env env) {
     this(
       env,
-      new Integer[env.config.tableSize],
-      new Integer[env.config.deckSize]
+      emptySlots(env.config.tableSize),
+      new ConcurrentHashMap<>(2 * env.config.tableSize)
     );
-    this.tokens = new LinkedList[env.config.tableSize];
-    for (int i = 0; i < env.config.tableSize; i++) {
-      tokens[i] = new LinkedList<Integer>();
-    }
-    this.slotLocks = new Object[env.config.tableSize];
-    for (int i = 0; i < env.config.tableSize; i++) {
-      slotLocks[i] = new Object();
-    }
-    this.playersTokens = new LinkedList[env.config.players];
-    for (int i = 0; i < env.config.players; i++) {
-      playersTokens[i] = new LinkedList<Integer>();
-    }
-    this.lock = new ReentrantReadWriteLock();
+  }
+
+  private static int[] emptySlots(int slots) {
+    int[] slotToCard = new int[slots];
+    Arrays.fill(slotToCard, TableSnapshot.NO_CARD);
+    return slotToCard;
+  }
+
+  /**
+   * @return - a power of two number of locks, a few per core but no more than the objects they guard.
+   */
+  private Lock[] stripes(int objects, String name) {
+    int wanted = Math.min(
+      Math.max(objects, 1),
+      4 * Runtime.getRuntime().availableProcessors()
+    );
+    int size = 1;
+    while (size < wanted) size <<= 1;
+    Lock[] stripes = new Lock[size];
+    for (int i = 0; i < stripes.length; i++) stripes[i] =
+      lockProfiler.lock(name);
+    return stripes;
+  }
+
+  private Lock slotLock(int slot) {
+    return slotLocks[slot & (slotLocks.length - 1)];
+  }
+
+  private Lock playerLock(int player) {
+    return playerLocks[player & (playerLocks.length - 1)];
   }
 
   /**
-   * This method prints all possible legal sets of cards that are currently on the table.
+   * This method logs all possible legal sets of cards that are currently on the table, once per table change.
+   * The sets come from the hint service's cache, so any thread may ask for them without searching the table again.
    */
   public void hints() {
-    List<Integer> deck = Arrays
-      .stream(slotToCard)
-      .filter(Objects::nonNull)
-      .collect(Collectors.toList());
-    env.util
-      .findSets(deck, Integer.MAX_VALUE)
+    TableSnapshot snapshot = snapshot();
+    long hinted = hintedGeneration.get();
+    if (
+      snapshot.generation <= hinted ||
+      !hintedGeneration.compareAndSet(hinted, snapshot.generation)
+    ) return;
+    hintService
+      .sets(snapshot)
       .forEach(set -> {
         StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
         List<Integer> slots = Arrays
           .stream(set)
-          .mapToObj(card -> cardToSlot[card])
+          .mapToObj(snapshot::slotOf)
           .sorted()
           .collect(Collectors.toList());
         int[][] features = env.util.cardsToFeatures(set);
-        System.out.println(
+        env.logger.info(
           sb
             .append("slots: ")
             .append(slots)
             .append(" features: ")
             .append(Arrays.deepToString(features))
+            .toString()
         );
       });
   }
 
+  /**
+   * @return - the service serving the legal sets on the table.
+   */
+  public HintService hintService() {
+    return hintService;
+  }
+
   /**
    * Count the number of cards currently on the table.
    *
    * @return - the number of cards on the table.
    */
   public int countCards() {
-    int cards = 0;
-    for (Integer card : slotToCard) if (card != null) ++cards;
-    return cards;
+    return snapshot().countCards();
+  }
+
+  /**
+   * @return - the profiler of the table's locks.
+   */
+  public LockProfiler lockProfiler() {
+    return lockProfiler;
+  }
+
+  /**
+   * Returns a consistent view of the cards on the table, without blocking the dealer.
+   *
+   * @return - the latest snapshot of the table.
+   */
+  public TableSnapshot snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * @return - the number of changes made to the cards on the table so far.
+   */
+  public long generation() {
+    return snapshot.generation;
+  }
+
+  // publishes the next snapshot after a slot changed (called while holding the slot lock)
+  private void publish(int slot, int card) {
+    synchronized (snapshotLock) {
+      snapshot = snapshot.with(slot, card);
+    }
   }
 
   /**
@@ -155,13 +276,16 @@ public class Table {
    * @post - the card placed is on the table, in the assigned slot.
    */
   public void placeCard(int card, int slot) {
+    Lock slotLock = slotLock(slot);
+    slotLock.lock();
     try {
-      Thread.sleep(env.config.tableDelayMillis);
-    } catch (InterruptedException ignored) {}
-    synchronized (slotLocks[slot]) {
-      cardToSlot[card] = slot;
+      cardToSlot.put(card, slot);
       slotToCard[slot] = card;
-      env.ui.placeCard(card, slotForUi(slot));
+      publish(slot, card);
+      int uiSlot = slotForUi(slot);
+      animate(env.config.tableDelayMillis, () -> env.ui.placeCard(card, uiSlot));
+    } finally {
+      slotLock.unlock();
     }
   }
 
@@ -170,33 +294,145 @@ public class Table {
    * @param slot - the slot from which to remove the card.
    */
   public void removeCard(int slot) {
+    Lock slotLock = slotLock(slot);
+    slotLock.lock();
     try {
-      Thread.sleep(env.config.tableDelayMillis);
-    } catch (InterruptedException ignored) {}
-    synchronized (slotLocks[slot]) {
       // syncing the slot
       int card = slotToCard[slot];
-      cardToSlot[card] = null;
-      slotToCard[slot] = null;
-      // clear all tokens
-      tokens[slot] = new LinkedList<Integer>();
-      // Iterating all players to find which hold tokens on the removed card
-      for (int playerId = 0; playerId < playersTokens.length; playerId++) {
-        LinkedList<Integer> playerTokens = playersTokens[playerId];
-        // for(LinkedList<Integer> playerTokens:playersTokens){
-        // Iterating a certain player's tokens to find one that represents the slot
-        for (int i = 0; i < playerTokens.size(); i++) {
-          synchronized (playersLock[playerId]) {
-            if (playerTokens.get(i) == slot) {
-              playerTokens.remove(i);
-              break; //breaks out of the player search loop, continues removing tokens from other players.
-            }
-          }
+      cardToSlot.remove(card);
+      slotToCard[slot] = TableSnapshot.NO_CARD;
+      publish(slot, TableSnapshot.NO_CARD);
+      clearTokens(slot);
+      int uiSlot = slotForUi(slot);
+      animate(
+        env.config.tableDelayMillis,
+        () -> {
+          env.ui.removeTokens(uiSlot);
+          env.ui.removeCard(uiSlot);
+        }
+      );
+    } finally {
+      slotLock.unlock();
+    }
+  }
+
+  /**
+   * Replaces the cards in a number of slots in one step: the tokens on the replaced cards are removed, the table
+   * publishes a single snapshot and the user interface gets one batched update, however many slots change.
+   *
+   * @param slots - the slots.
+   * @param cards - the card to place in each slot (NO_CARD to leave it empty).
+   * @return - the cards that were in the slots (NO_CARD if none).
+   */
+  public int[] replaceCards(int[] slots, int[] cards) {
+    int[] previous = new int[slots.length];
+    int removed = 0, placed = 0;
+    for (int i = 0; i < slots.length; i++) {
+      int slot = slots[i];
+      Lock slotLock = slotLock(slot);
+      slotLock.lock();
+      try {
+        previous[i] = slotToCard[slot];
+        if (previous[i] != TableSnapshot.NO_CARD) {
+          cardToSlot.remove(previous[i]);
+          clearTokens(slot);
+          ++removed;
+        }
+        slotToCard[slot] = cards[i];
+        if (cards[i] != TableSnapshot.NO_CARD) {
+          cardToSlot.put(cards[i], slot);
+          ++placed;
+        }
+      } finally {
+        slotLock.unlock();
+      }
+    }
+    synchronized (snapshotLock) {
+      snapshot = snapshot.with(slots, cards);
+    }
+
+    int[] removedSlots = new int[removed];
+    int[] placedSlots = new int[placed];
+    int[] placedCards = new int[placed];
+    removed = placed = 0;
+    for (int i = 0; i < slots.length; i++) {
+      if (previous[i] != TableSnapshot.NO_CARD) removedSlots[removed++] =
+        slotForUi(slots[i]);
+      if (cards[i] != TableSnapshot.NO_CARD) {
+        placedSlots[placed] = slotForUi(slots[i]);
+        placedCards[placed++] = cards[i];
+      }
+    }
+    if (removedSlots.length + placedSlots.length > 0) animate(
+      env.config.tableDelayMillis,
+      () -> {
+        if (removedSlots.length > 0) env.ui.removeCards(removedSlots);
+        if (placedSlots.length > 0) env.ui.placeCards(placedCards, placedSlots);
+      }
+    );
+    // the hints are logged on their own thread, off the dealer's critical path
+    if (
+      hintExecutor != null && placed > 0 && hintsQueued.compareAndSet(false, true)
+    ) hintExecutor.execute(() -> {
+      hintsQueued.set(false);
+      hints();
+    });
+    return previous;
+  }
+
+  /**
+   * Removes all the cards from the table in one step (see replaceCards).
+   *
+   * @return - the cards that were on the table.
+   */
+  public int[] clearAll() {
+    int[] slots = new int[slotToCard.length];
+    for (int slot = 0; slot < slots.length; slot++) slots[slot] = slot;
+    int[] empty = new int[slots.length];
+    Arrays.fill(empty, TableSnapshot.NO_CARD);
+    return Arrays
+      .stream(replaceCards(slots, empty))
+      .filter(card -> card != TableSnapshot.NO_CARD)
+      .toArray();
+  }
+
+  // removes all the tokens from a slot: only the players that have a token on it are visited (called while holding
+  // the slot lock)
+  private void clearTokens(int slot) {
+    long[] players = slotTokens[slot];
+    for (int word = 0; word < players.length; word++) {
+      for (long bits = players[word]; bits != 0; bits &= bits - 1) {
+        int player = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+        Lock playerLock = playerLock(player);
+        playerLock.lock();
+        try {
+          removePlayerToken(player, slot);
+        } finally {
+          playerLock.unlock();
         }
       }
-      env.ui.removeTokens(slotForUi(slot));
-      env.ui.removeCard(slotForUi(slot));
+      players[word] = 0;
+    }
+  }
+
+  /**
+   * Shows a change on the table after the card animations scheduled before it. The table itself is updated at once;
+   * only the user interface lags behind, one step per table delay, on the game's timer (nobody sleeps).
+   *
+   * @param delay - the duration of the step, in milliseconds.
+   * @param step  - the user interface update.
+   */
+  private void animate(long delay, Runnable step) {
+    synchronized (animationLock) {
+      long now = System.currentTimeMillis();
+      if (delay > 0 || animationEnd > now) {
+        animationEnd = Math.max(animationEnd, now) + delay;
+        env.timers.schedule(animationEnd - now, step);
+        return;
+      }
     }
+    // nothing is animating, so there is nothing to wait for
+    step.run();
   }
 
   /**
@@ -205,23 +441,44 @@ public class Table {
    * @param slot   - the slot on which to place the token.
    */
   public void placeToken(int player, int slot) {
+    long requested = GameEvents.tableLockRequested();
     this.lock.readLock().lock();
+    Object locked = GameEvents.tableLocked(false, requested);
     // sync the slot and the player
-    synchronized (slotLocks[slot]) {
-      synchronized (playersLock[player]) {
+    Lock slotLock = slotLock(slot);
+    slotLock.lock();
+    try {
+      Lock playerLock = playerLock(player);
+      playerLock.lock();
+      try {
         //checking if the player put already 3 tokens
         if (
-          slotToCard[slot] != null &&
-          playersTokens[player].size() < env.config.featureSize
+          slotToCard[slot] != TableSnapshot.NO_CARD &&
+          playerTokenCounts[player] < env.config.featureSize &&
+          !hasToken(player, slot)
         ) {
-          // adding the token to the playersToken array and to the table tokens
-          tokens[slot].add(player);
-          playersTokens[player].add(slot);
-          //displaying in the ui
-          env.ui.placeToken(player, slotForUi(slot));
+          // adding the token to the player's slots and to the slot's players
+          slotTokens[slot][player / Long.SIZE] |= 1L << player;
+          playerTokens[player][playerTokenCounts[player]++] = slot;
+          //displaying in the ui (after the card animations, so the token is not cleared with an older card)
+          long pressed = env.tracer.placed(player);
+          int uiSlot = slotForUi(slot);
+          animate(
+            0,
+            () -> {
+              long started = env.tracer.stamp();
+              env.ui.placeToken(player, uiSlot);
+              env.tracer.dispatched(player, pressed, started);
+            }
+          );
         }
+      } finally {
+        playerLock.unlock();
       }
+    } finally {
+      slotLock.unlock();
     }
+    GameEvents.tableUnlocked(locked);
     this.lock.readLock().unlock();
   }
 
@@ -232,39 +489,50 @@ public class Table {
    * @return       - true iff a token was successfully removed.
    */
   public boolean removeToken(int player, int slot) {
+    long requested = GameEvents.tableLockRequested();
     this.lock.readLock().lock();
-    // sync on the slot and on the player lock so only 1 action per player and per slot
-    synchronized (slotLocks[slot]) {
-      synchronized (playersLock[player]) {
-        int index = -1;
-        int counter = 0;
-        // searching for the player token in the slot
-        for (int playerId : tokens[slot]) {
-          if (playerId == player) {
-            index = counter;
-            break;
-          }
-          counter++;
-        }
-        if (index == -1) {
-          // if we didnt found a token on the player we return false
-          this.lock.readLock().unlock();
-          return false;
-        }
-        // removing the token from the playerTokens list
-        for (int i = 0; i < playersTokens[player].size(); i++) {
-          if (
-            playersTokens[player].get(i) == slot
-          ) playersTokens[player].remove(i);
+    Object locked = GameEvents.tableLocked(false, requested);
+    try {
+      // sync on the slot and on the player lock so only 1 action per player and per slot
+      Lock slotLock = slotLock(slot);
+      slotLock.lock();
+      try {
+        Lock playerLock = playerLock(player);
+        playerLock.lock();
+        try {
+          // if the player has no token on the slot we return false
+          if (!hasToken(player, slot)) return false;
+          slotTokens[slot][player / Long.SIZE] &= ~(1L << player);
+          removePlayerToken(player, slot);
+          // updating in the ui
+          int uiSlot = slotForUi(slot);
+          animate(0, () -> env.ui.removeToken(player, uiSlot));
+          return true;
+        } finally {
+          playerLock.unlock();
         }
-        tokens[slot].remove(index);
-        // updating in the ui
-        env.ui.removeToken(player, slotForUi(slot));
+      } finally {
+        slotLock.unlock();
+      }
+    } finally {
+      GameEvents.tableUnlocked(locked);
+      this.lock.readLock().unlock();
+    }
+  }
 
-        this.lock.readLock().unlock();
+  // checks the slot's bitset (called while holding the slot lock)
+  private boolean hasToken(int player, int slot) {
+    return (slotTokens[slot][player / Long.SIZE] & (1L << player)) != 0;
+  }
 
-        return true;
-      }
+  // removes a slot from the player's slots, keeping the placement order (called while holding the player lock)
+  private void removePlayerToken(int player, int slot) {
+    int[] slots = playerTokens[player];
+    int count = playerTokenCounts[player];
+    for (int i = 0; i < count; i++) if (slots[i] == slot) {
+      System.arraycopy(slots, i + 1, slots, i, count - i - 1);
+      playerTokenCounts[player] = count - 1;
+      return;
     }
   }
 
@@ -275,55 +543,68 @@ public class Table {
     return row * env.config.columns + col;
   }
 
-  // a function for the dealer to check a set from a certain player
   /**
+   * Returns the slots a player placed its tokens on.
    *
-   * @param player
-   * @pre playersToken[player].length = env.config.featuresize
-   *
+   * @param player - the player.
+   * @return - the slots of the player's tokens, in placement order.
    */
-  public int[] getSetCards(int player) {
-    int[] cards = new int[env.config.featureSize];
-    int counter = 0;
-    synchronized (playersLock[player]) {
-      for (int slot : playersTokens[player]) {
-        synchronized (slotLocks[slot]) {
-          cards[counter] = slotToCard[slot];
-          counter++;
-        }
-      }
+  public int[] getTokenSlots(int player) {
+    Lock playerLock = playerLock(player);
+    playerLock.lock();
+    try {
+      return Arrays.copyOf(playerTokens[player], playerTokenCounts[player]);
+    } finally {
+      playerLock.unlock();
     }
-    return cards;
   }
 
-  // this function get all the players that has put thier token on a certain slot for use in remove cards in dealer class
-  public LinkedList<Integer> getAllPlayersThatPlacedTokenOnSlot(int slot) {
-    LinkedList<Integer> players = new LinkedList<>();
-    // sync on the slot
-    synchronized (slotLocks[slot]) {
-      // adding all the players id that put thier token on the slot
-      for (int player : tokens[slot]) {
-        players.add(player);
-      }
+  /**
+   * Returns the players that placed a token on a slot (e.g. to update their token counters when the card is removed).
+   *
+   * @param slot - the slot.
+   * @return - the players, in increasing order.
+   */
+  public int[] getPlayersWithTokenOn(int slot) {
+    Lock slotLock = slotLock(slot);
+    slotLock.lock();
+    try {
+      long[] players = slotTokens[slot];
+      int count = 0;
+      for (long word : players) count += Long.bitCount(word);
+      int[] ids = new int[count];
+      int i = 0;
+      for (int word = 0; word < players.length; word++) for (
+        long bits = players[word];
+        bits != 0;
+        bits &= bits - 1
+      ) ids[i++] = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+      return ids;
+    } finally {
+      slotLock.unlock();
     }
-    return players;
   }
 
-  public Integer slotToCard(int slotVal) {
-    synchronized (slotLocks[slotVal]) {
-      return slotToCard[slotVal];
+  /**
+   * @param slot - the slot.
+   * @return - the card in the slot, or NO_CARD if the slot is empty.
+   */
+  public int slotToCard(int slot) {
+    Lock slotLock = slotLock(slot);
+    slotLock.lock();
+    try {
+      return slotToCard[slot];
+    } finally {
+      slotLock.unlock();
     }
   }
 
-  public int cardToSlot(int cardVal) {
-    synchronized (slotLocks[cardVal]) {
-      return cardToSlot[cardVal];
-    }
+  /**
+   * @param card - the card.
+   * @return - the slot the card is in, or -1 if it is not on the table.
+   */
+  public int cardToSlot(int card) {
+    Integer slot = cardToSlot.get(card);
+    return slot == null ? -1 : slot;
   }
-  // public void removeAllCards(){
-  //     try{
-  //         semaphore.acquire();
-
-  //     }
-  // }
 }
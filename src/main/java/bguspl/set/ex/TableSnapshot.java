@@ -0,0 +1,109 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+
+/**
+ * An immutable view of the cards on the table.
+ * The table publishes a new snapshot (with the next generation number) on every change, so readers get a consistent
+ * view of all the slots without taking any lock.
+ *
+ * @inv generation >= 0
+ */
+public final class TableSnapshot {
+
+  /**
+   * The value of an empty slot.
+   */
+  public static final int NO_CARD = -1;
+
+  /**
+   * The number of changes made to the table before this snapshot was published.
+   */
+  public final long generation;
+
+  /**
+   * The card in each slot (NO_CARD if none). Never modified after construction.
+   */
+  private final int[] slotToCard;
+
+  TableSnapshot(long generation, int[] slotToCard) {
+    this.generation = generation;
+    this.slotToCard = slotToCard;
+  }
+
+  /**
+   * Creates the next snapshot, with a single slot changed.
+   *
+   * @param slot - the slot that changed.
+   * @param card - the card now in the slot (NO_CARD if none).
+   * @return - the next snapshot.
+   */
+  TableSnapshot with(int slot, int card) {
+    int[] cards = Arrays.copyOf(slotToCard, slotToCard.length);
+    cards[slot] = card;
+    return new TableSnapshot(generation + 1, cards);
+  }
+
+  /**
+   * Creates the next snapshot, with a number of slots changed at once.
+   *
+   * @param slots - the slots that changed.
+   * @param cards - the card now in each slot (NO_CARD if none).
+   * @return - the next snapshot.
+   */
+  TableSnapshot with(int[] slots, int[] cards) {
+    int[] next = Arrays.copyOf(slotToCard, slotToCard.length);
+    for (int i = 0; i < slots.length; i++) next[slots[i]] = cards[i];
+    return new TableSnapshot(generation + 1, next);
+  }
+
+  /**
+   * @return - the number of slots on the table.
+   */
+  public int slots() {
+    return slotToCard.length;
+  }
+
+  /**
+   * @param slot - the slot.
+   * @return - the card in the slot, or NO_CARD if the slot is empty.
+   */
+  public int card(int slot) {
+    return slotToCard[slot];
+  }
+
+  /**
+   * @param slot - the slot.
+   * @return - true iff there is a card in the slot.
+   */
+  public boolean hasCard(int slot) {
+    return slotToCard[slot] != NO_CARD;
+  }
+
+  /**
+   * @param card - the card id.
+   * @return - the slot the card is in, or -1 if it is not on the table.
+   */
+  public int slotOf(int card) {
+    for (int slot = 0; slot < slotToCard.length; slot++) if (
+      slotToCard[slot] == card
+    ) return slot;
+    return -1;
+  }
+
+  /**
+   * @return - the number of cards on the table.
+   */
+  public int countCards() {
+    int cards = 0;
+    for (int card : slotToCard) if (card != NO_CARD) ++cards;
+    return cards;
+  }
+
+  /**
+   * @return - the cards on the table, in slot order.
+   */
+  public int[] cards() {
+    return Arrays.stream(slotToCard).filter(card -> card != NO_CARD).toArray();
+  }
+}
@@ -0,0 +1,231 @@
+package bguspl.set.ex;
+
+import bguspl.set.ThreadLogger;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * This class detects the game threads that stopped making progress.
+ * Every game thread registers a heartbeat and beats it on every iteration of its loop, which costs a single volatile
+ * write. A watchdog thread checks the heartbeats periodically; a heartbeat that did not beat for longer than the stall
+ * threshold is counted as a stall and reported once (until it beats again), with a dump of all the game threads. A
+ * thread that waits for something that may legitimately never come (e.g. the dealer of a game with no timer waiting
+ * for claims) marks its heartbeat idle until it is woken up.
+ */
+public class Watchdog {
+
+  /**
+   * The value of the beat of an idle heartbeat.
+   */
+  private static final long IDLE = Long.MIN_VALUE;
+
+  /**
+   * The heartbeat of a game thread.
+   */
+  public static final class Heartbeat {
+
+    private final String name;
+    private final Thread thread;
+
+    /**
+     * The time (System.nanoTime) of the last beat, or IDLE.
+     */
+    private volatile long beat = System.nanoTime();
+
+    /**
+     * The beat the last stall was reported for (used by the watchdog thread only).
+     */
+    private long reported = IDLE;
+
+    /**
+     * The number of stalls detected on this heartbeat.
+     */
+    private volatile long stalls;
+
+    private Heartbeat(String name, Thread thread) {
+      this.name = name;
+      this.thread = thread;
+    }
+
+    /**
+     * Marks progress (called by the thread on every iteration of its loop).
+     */
+    public void beat() {
+      beat = System.nanoTime();
+    }
+
+    /**
+     * Marks the thread as waiting for something that may legitimately never come, until its next beat.
+     */
+    public void idle() {
+      beat = IDLE;
+    }
+
+    /**
+     * @return - the number of stalls detected on this heartbeat.
+     */
+    public long stalls() {
+      return stalls;
+    }
+  }
+
+  private final Logger logger;
+  private final long stallNanos;
+  private final List<Heartbeat> heartbeats = new CopyOnWriteArrayList<>();
+
+  /**
+   * The total number of stalls detected.
+   */
+  private volatile long stalls;
+
+  private Thread thread;
+  private volatile boolean terminate;
+
+  /**
+   * @param logger      - the logger the stalls are reported to.
+   * @param stallMillis - the number of milliseconds without a beat that is a stall (0 to disable the watchdog).
+   */
+  public Watchdog(Logger logger, long stallMillis) {
+    this.logger = logger;
+    this.stallNanos = stallMillis * 1_000_000L;
+  }
+
+  /**
+   * @return - true iff the heartbeats are checked.
+   */
+  public boolean enabled() {
+    return stallNanos > 0;
+  }
+
+  /**
+   * Registers the heartbeat of a thread (a heartbeat is returned even if the watchdog is disabled).
+   *
+   * @param name   - the name the stalls of the thread are reported under.
+   * @param thread - the thread.
+   * @return - the heartbeat.
+   */
+  public Heartbeat register(String name, Thread thread) {
+    Heartbeat heartbeat = new Heartbeat(name, thread);
+    if (enabled()) heartbeats.add(heartbeat);
+    return heartbeat;
+  }
+
+  /**
+   * Stops checking a heartbeat (e.g. when its thread terminates).
+   *
+   * @param heartbeat - the heartbeat.
+   */
+  public void unregister(Heartbeat heartbeat) {
+    heartbeats.remove(heartbeat);
+  }
+
+  /**
+   * @return - the total number of stalls detected.
+   */
+  public long stalls() {
+    return stalls;
+  }
+
+  /**
+   * Starts the watchdog thread (if the watchdog is enabled).
+   */
+  public synchronized void start() {
+    if (!enabled() || thread != null || terminate) return;
+    thread = new Thread(this::run, "watchdog");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the watchdog thread.
+   */
+  public void terminate() {
+    terminate = true;
+    synchronized (this) {
+      if (thread != null) thread.interrupt();
+    }
+  }
+
+  private void run() {
+    ThreadLogger.logStart(logger, Thread.currentThread().getName());
+    // a stall is detected at most half a threshold late
+    long periodMillis = Math.max(stallNanos / 2_000_000L, 10);
+    while (!terminate) {
+      try {
+        Thread.sleep(periodMillis);
+      } catch (InterruptedException ignored) {
+        continue;
+      }
+      check(System.nanoTime());
+    }
+    ThreadLogger.logStop(logger, Thread.currentThread().getName());
+  }
+
+  /**
+   * Checks the heartbeats, reporting the new stalls.
+   *
+   * @param now - the current time (System.nanoTime).
+   * @return - the number of new stalls.
+   */
+  int check(long now) {
+    int found = 0;
+    for (Heartbeat heartbeat : heartbeats) {
+      long beat = heartbeat.beat;
+      if (beat == IDLE || beat == heartbeat.reported || now - beat <= stallNanos) continue;
+      heartbeat.reported = beat;
+      ++heartbeat.stalls;
+      ++found;
+      logger.severe(
+        "watchdog: " +
+        heartbeat.name +
+        " made no progress for " +
+        (now - beat) / 1_000_000L +
+        " ms" +
+        System.lineSeparator() +
+        dump()
+      );
+    }
+    if (found > 0) stalls += found;
+    return found;
+  }
+
+  /**
+   * @return - the stacks of all the game threads, with the locks they wait for and who holds them.
+   */
+  String dump() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    StringBuilder dump = new StringBuilder();
+    for (Heartbeat heartbeat : heartbeats) {
+      ThreadInfo info = threads.getThreadInfo(
+        new long[] { heartbeat.thread.getId() },
+        threads.isObjectMonitorUsageSupported(),
+        threads.isSynchronizerUsageSupported()
+      )[0];
+      if (info == null) continue;
+      dump
+        .append('"')
+        .append(info.getThreadName())
+        .append("\" ")
+        .append(info.getThreadState());
+      LockInfo lock = info.getLockInfo();
+      if (lock != null) {
+        dump.append(" on ").append(lock);
+        if (info.getLockOwnerName() != null) dump
+          .append(" owned by \"")
+          .append(info.getLockOwnerName())
+          .append('"');
+      }
+      dump.append(System.lineSeparator());
+      for (StackTraceElement frame : info.getStackTrace()) dump
+        .append("    at ")
+        .append(frame)
+        .append(System.lineSeparator());
+    }
+    return dump.toString();
+  }
+}
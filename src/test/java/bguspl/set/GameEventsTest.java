@@ -0,0 +1,66 @@
+package bguspl.set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameEventsTest {
+
+    @Test
+    void events_NotRecordedWithoutRecording() {
+
+        assertNull(GameEvents.claimStarted(0, new int[]{0, 1, 2}));
+        assertEquals(0, GameEvents.tableLockRequested());
+    }
+
+    @Test
+    void events_RecordedWithFields() throws Exception {
+
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        Util util = new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+
+        Path file = Files.createTempFile("events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("bguspl.set.SetSearch");
+            recording.enable("bguspl.set.ClaimVerdict");
+            recording.start();
+            util.findSets(new int[]{0, 1, 2, 3}, 4, 10);
+            Object claim = GameEvents.claimStarted(1, new int[]{0, 1, 2});
+            GameEvents.claimDecided(claim, "POINT");
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("bguspl.set."))
+                .collect(Collectors.toList());
+        Files.delete(file);
+
+        assertEquals(2, events.size());
+        RecordedEvent search = events.stream()
+                .filter(event -> event.getEventType().getName().equals("bguspl.set.SetSearch")).findFirst().get();
+        assertEquals("sequential", search.getString("algorithm"));
+        assertEquals(4, search.getInt("inputSize"));
+        assertEquals(1, search.getInt("found"));
+        RecordedEvent verdict = events.stream()
+                .filter(event -> event.getEventType().getName().equals("bguspl.set.ClaimVerdict")).findFirst().get();
+        assertEquals(1, verdict.getInt("player"));
+        assertEquals("[0, 1, 2]", verdict.getString("slots"));
+        assertEquals("POINT", verdict.getString("verdict"));
+        assertTrue(!verdict.getDuration().isNegative());
+    }
+}
@@ -0,0 +1,85 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameLifecycleTest {
+
+    private static Logger logger() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        return logger;
+    }
+
+    @Test
+    void shutdown_StopsInReverseOrderOfStart() throws InterruptedException {
+
+        GameLifecycle lifecycle = new GameLifecycle(logger(), 5000);
+        List<String> stopped = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch running = new CountDownLatch(2);
+        Runnable waitForInterrupt = () -> {
+            running.countDown();
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                stopped.add(Thread.currentThread().getName());
+            }
+        };
+
+        lifecycle.register("service", () -> stopped.add("service"));
+        Thread first = lifecycle.start("first", waitForInterrupt, null);
+        Thread second = lifecycle.start("second", waitForInterrupt, null);
+        running.await();
+
+        assertEquals(Collections.emptyList(), lifecycle.shutdown());
+        assertEquals(Arrays.asList("second", "first", "service"), stopped);
+        assertFalse(first.isAlive());
+        assertFalse(second.isAlive());
+        assertTrue(first.isDaemon());
+        assertNull(lifecycle.start("late", () -> {}, null));
+    }
+
+    @Test
+    void shutdown_ReportsStragglersWithinTheDeadline() throws InterruptedException {
+
+        GameLifecycle lifecycle = new GameLifecycle(logger(), 100);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread stubborn = lifecycle.start("stubborn", () -> {
+            while (true) try {
+                release.await();
+                return;
+            } catch (InterruptedException ignored) {
+            }
+        }, null);
+
+        long start = System.nanoTime();
+        assertEquals(Collections.singletonList("stubborn"), lifecycle.shutdown());
+        assertTrue(System.nanoTime() - start < 2_000_000_000L);
+        assertEquals(Collections.singletonList("stubborn"), lifecycle.stragglers());
+
+        release.countDown();
+        stubborn.join();
+    }
+
+    @Test
+    void start_TerminatedThreadsLeaveTheLifecycle() throws InterruptedException {
+
+        GameLifecycle lifecycle = new GameLifecycle(logger(), 1000);
+        lifecycle.register("service", () -> {});
+        for (int i = 0; i < 100; i++) lifecycle.start("game-" + i, () -> {}, null).join();
+
+        assertEquals(1, lifecycle.members());
+        assertEquals(Collections.emptyList(), lifecycle.shutdown());
+    }
+}
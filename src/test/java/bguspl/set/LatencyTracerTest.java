@@ -0,0 +1,62 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyTracerTest {
+
+    private static long samples(LatencyTracer tracer, int player, LatencyTracer.Stage stage) {
+        return Arrays.stream(tracer.histogram(player, stage)).sum();
+    }
+
+    @Test
+    void dispatched_EveryStageIsRecorded() {
+
+        LatencyTracer tracer = new LatencyTracer(true, 2);
+        tracer.paintsReported();
+        long stamp = tracer.stamp();
+        tracer.dequeued(1, stamp);
+        long pressed = tracer.placed(1);
+        tracer.dispatched(1, pressed, tracer.stamp());
+        tracer.painted(System.nanoTime());
+        tracer.verdict(1, tracer.stamp());
+
+        for (LatencyTracer.Stage stage : LatencyTracer.Stage.values()) {
+            assertEquals(1, samples(tracer, 1, stage));
+            assertEquals(0, samples(tracer, 0, stage));
+        }
+        assertTrue(tracer.percentileNanos(1, LatencyTracer.Stage.TOTAL, 99) > 0);
+    }
+
+    @Test
+    void painted_OnlyTokensDispatchedBeforeThePaint() {
+
+        LatencyTracer tracer = new LatencyTracer(true, 1);
+        tracer.paintsReported();
+        long started = System.nanoTime();
+        long pressed = tracer.stamp();
+        tracer.dequeued(0, pressed);
+        tracer.dispatched(0, pressed, tracer.stamp());
+
+        tracer.painted(started);
+        assertEquals(0, samples(tracer, 0, LatencyTracer.Stage.PAINT));
+
+        tracer.painted(System.nanoTime());
+        assertEquals(1, samples(tracer, 0, LatencyTracer.Stage.PAINT));
+    }
+
+    @Test
+    void disabled_NothingIsRecorded() {
+
+        LatencyTracer tracer = new LatencyTracer(false, 1);
+        tracer.dequeued(0, tracer.stamp());
+        tracer.dispatched(0, tracer.placed(0), tracer.stamp());
+
+        assertEquals(0, tracer.stamp());
+        assertEquals(0, samples(tracer, 0, LatencyTracer.Stage.TOTAL));
+    }
+}
@@ -0,0 +1,293 @@
+package bguspl.set;
+
+import bguspl.set.ex.Lobby;
+import bguspl.set.ex.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class NetworkServerTest {
+
+    SpectatorFeed feed;
+    SpectatorFeed lobbyFeed;
+    NetworkServer server;
+    Thread serverThread;
+    SocketChannel client;
+
+    @Mock
+    Player player1;
+    @Mock
+    Player player2;
+    @Mock
+    Player lobbyPlayer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("SpectatorBufferSize", "1024");
+        Logger logger = Logger.getLogger("NetworkServerTest");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+
+        feed = new SpectatorFeed(config, null);
+        // every match of the lobby is started as a game of the lobby player, followed through the lobby feed
+        lobbyFeed = new SpectatorFeed(config, null);
+        Lobby lobby = new Lobby(100, 1000, match -> match.humans.get(0).started(lobbyPlayer, lobbyFeed));
+        server = new NetworkServer(logger, config, new Player[]{player1, player2}, feed, lobby, 0);
+        serverThread = new Thread(server, "network");
+        serverThread.start();
+        client = SocketChannel.open(new InetSocketAddress("localhost", server.port()));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.terminate();
+        serverThread.join(1000);
+    }
+
+    private void send(byte type, int... values) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(3 + 2 * values.length);
+        frame.putShort((short) (1 + 2 * values.length)).put(type);
+        for (int value : values) frame.putShort((short) value);
+        frame.flip();
+        while (frame.hasRemaining()) client.write(frame);
+    }
+
+    private ByteBuffer receive() throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(2);
+        while (length.hasRemaining()) client.read(length);
+        ByteBuffer frame = ByteBuffer.allocate(length.getShort(0));
+        while (frame.hasRemaining()) client.read(frame);
+        frame.flip();
+        return frame;
+    }
+
+    private ByteBuffer receive(byte type) throws IOException {
+        ByteBuffer frame;
+        do frame = receive(); while (frame.get() != type);
+        return frame;
+    }
+
+    @Test
+    void join_SelectionsAreDispatchedToThePlayer() throws IOException {
+
+        send(NetworkServer.JOIN, 1);
+        assertEquals(1, receive(NetworkServer.JOINED).getShort());
+
+        send(NetworkServer.SELECT, 3);
+        verify(player2, timeout(1000)).keyPressed(3);
+    }
+
+    @Test
+    void join_PlayerAlreadyTaken() throws IOException {
+
+        send(NetworkServer.JOIN, 0);
+        assertEquals(0, receive(NetworkServer.JOINED).getShort());
+
+        SocketChannel first = client;
+        try (SocketChannel other = SocketChannel.open(new InetSocketAddress("localhost", server.port()))) {
+            client = other;
+            send(NetworkServer.JOIN, 0);
+            assertEquals(-1, receive(NetworkServer.JOINED).getShort());
+        } finally {
+            client = first;
+        }
+    }
+
+    @Test
+    void select_FailureOnlyClosesThatConnection() throws IOException {
+
+        doThrow(new IllegalStateException("broken")).when(player1).keyPressed(1);
+        send(NetworkServer.JOIN, 0);
+        assertEquals(0, receive(NetworkServer.JOINED).getShort());
+        send(NetworkServer.SELECT, 1);
+
+        // the connection is closed (and its player freed), but the server keeps serving
+        ByteBuffer rest = ByteBuffer.allocate(1 << 16);
+        while (client.read(rest) >= 0) rest.clear();
+        SocketChannel first = client;
+        try (SocketChannel other = SocketChannel.open(new InetSocketAddress("localhost", server.port()))) {
+            client = other;
+            send(NetworkServer.JOIN, 0);
+            assertEquals(0, receive(NetworkServer.JOINED).getShort());
+        } finally {
+            client = first;
+        }
+    }
+
+    @Test
+    void queue_ClientPlaysAndFollowsItsLobbyGame() throws IOException {
+
+        // a game of a single player is matched right away
+        send(NetworkServer.QUEUE, 150, 1);
+        assertEquals(0, receive(NetworkServer.STARTED).getShort());
+
+        lobbyFeed.placeCard(7, 2);
+        ByteBuffer frame = receive(NetworkServer.CARD);
+        assertEquals(2, frame.getShort());
+        assertEquals(7, frame.getInt());
+
+        send(NetworkServer.SELECT, 2);
+        verify(lobbyPlayer, timeout(1000)).keyPressed(2);
+        verifyNoInteractions(player1, player2);
+    }
+
+    @Test
+    void queue_RefusedAfterJoin() throws IOException {
+
+        send(NetworkServer.JOIN, 0);
+        assertEquals(0, receive(NetworkServer.JOINED).getShort());
+
+        send(NetworkServer.QUEUE, 150, 1);
+        assertEquals(-1, receive(NetworkServer.STARTED).getShort());
+    }
+
+    @Test
+    void placeCard_IsBroadcast() throws IOException {
+
+        send(NetworkServer.JOIN, 0);
+        receive(NetworkServer.JOINED);
+
+        feed.placeCard(42, 2);
+        ByteBuffer frame = receive(NetworkServer.CARD);
+        assertEquals(2, frame.getShort());
+        assertEquals(42, frame.getInt());
+    }
+
+    @Test
+    void placeCard_LateSpectatorGetsSnapshot() throws IOException {
+
+        feed.placeCard(42, 2);
+        feed.setScore(1, 3);
+
+        SocketChannel first = client;
+        try (SocketChannel other = SocketChannel.open(new InetSocketAddress("localhost", server.port()))) {
+            client = other;
+            ByteBuffer card = receive(NetworkServer.CARD);
+            assertEquals(2, card.getShort());
+            assertEquals(42, card.getInt());
+            ByteBuffer score;
+            do score = receive(NetworkServer.SCORE); while (score.getShort() != 1);
+            assertEquals(3, score.getInt());
+        } finally {
+            client = first;
+        }
+    }
+
+    @Test
+    void reader_FallingBehindIsResynced() {
+
+        SpectatorFeed.Reader reader = feed.newReader();
+        for (int i = 0; i < 1000; i++) feed.placeCard(i, i % 4);
+
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        reader.read(out);
+        out.flip();
+        assertTrue(feed.resyncs() > 0);
+        assertEquals(4 * 9 + 2 * 9, out.remaining()); // a card and a score frame for each slot and player
+    }
+
+    @Test
+    void announceWinner_InTheSnapshotOfALateSpectator() {
+
+        feed.setScore(1, 3);
+        feed.announceWinner(new int[]{1});
+
+        ByteBuffer out = ByteBuffer.allocate(1 << 10);
+        feed.newReader().read(out);
+        out.flip();
+        ByteBuffer frame;
+        do {
+            assertTrue(out.hasRemaining());
+            frame = out.duplicate();
+            out.position(out.position() + 2 + out.getShort(out.position()));
+            frame.position(frame.position() + 2);
+        } while (frame.get() != NetworkServer.WINNERS);
+        assertEquals(1, frame.getShort());
+        assertEquals(1, frame.getShort());
+    }
+
+    @Test
+    void reader_ConcurrentWritersLoseNoFrame() throws InterruptedException {
+
+        Thread[] writers = new Thread[4];
+        int updates = 20; // well within the ring, so the reader never falls behind
+        SpectatorFeed.Reader reader = feed.newReader();
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        reader.read(out); // the initial snapshot
+        int snapshot = out.position();
+        for (int i = 0; i < writers.length; i++) {
+            int writer = i;
+            writers[i] = new Thread(() -> {
+                for (int update = 0; update < updates; update++) feed.placeCard(writer * updates + update, writer);
+            });
+            writers[i].start();
+        }
+        // read while the writers write
+        while (out.position() < snapshot + writers.length * updates * 9) reader.read(out);
+        for (Thread writer : writers) writer.join();
+
+        out.flip();
+        out.position(snapshot);
+        int[] next = new int[writers.length];
+        while (out.hasRemaining()) {
+            assertEquals(7, out.getShort());
+            assertEquals(NetworkServer.CARD, out.get());
+            int slot = out.getShort(), card = out.getInt();
+            // every writer's frames arrive in the order it wrote them
+            assertEquals(slot * updates + next[slot]++, card);
+        }
+        for (int count : next) assertEquals(updates, count);
+        assertEquals(0, feed.resyncs());
+    }
+
+    @Test
+    void reader_StalledWriterDoesNotHideANewerFrame() {
+
+        // a writer reserves its sequence number, then stalls while the others write a whole lap of the ring, the
+        // last frame of which goes into its slot
+        long stalled = feed.reserve();
+        SpectatorFeed.Reader reader = feed.newReader();
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        reader.read(out); // the initial snapshot
+        out.clear();
+        for (int update = 1; update <= feed.capacity(); update++) feed.setScore(0, update);
+        feed.publish(stalled, new byte[]{0, 7, NetworkServer.SCORE, 0, 0, 0, 0, 0, -1});
+
+        reader.read(out);
+        feed.setScore(0, feed.capacity() + 1);
+        reader.read(out);
+
+        out.flip();
+        for (int update = 1; update <= feed.capacity() + 1; update++) {
+            assertEquals(7, out.getShort());
+            assertEquals(NetworkServer.SCORE, out.get());
+            assertEquals(0, out.getShort());
+            assertEquals(update, out.getInt());
+        }
+        assertFalse(out.hasRemaining());
+        assertEquals(0, feed.resyncs());
+    }
+}
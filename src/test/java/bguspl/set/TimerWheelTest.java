@@ -0,0 +1,65 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    TimerWheel timers;
+
+    @BeforeEach
+    void setUp() {
+        Logger logger = Logger.getLogger("TimerWheelTest");
+        logger.setUseParentHandlers(false);
+        timers = new TimerWheel(logger, 1, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timers.terminate();
+    }
+
+    @Test
+    void schedule_TasksRunInDeadlineOrderAndNeverEarly() throws InterruptedException {
+
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        long[] ranAfter = new long[3];
+        // the last deadline is more than a full turn of the wheel away
+        for (int i : new int[]{2, 0, 1})
+            timers.schedule(5 + 10 * i, () -> {
+                ranAfter[i] = System.nanoTime() - start;
+                order.add(i);
+                done.countDown();
+            });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 1, 2), order);
+        for (int i = 0; i < 3; i++)
+            assertTrue(ranAfter[i] >= (5 + 10 * i) * 1_000_000L);
+    }
+
+    @Test
+    void cancel_TaskDoesNotRun() throws InterruptedException {
+
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch after = new CountDownLatch(1);
+        timers.schedule(5, cancelled::countDown).cancel();
+        timers.schedule(10, after::countDown);
+
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.getCount());
+    }
+}
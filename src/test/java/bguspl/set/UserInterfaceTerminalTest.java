@@ -0,0 +1,68 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserInterfaceTerminalTest {
+
+    private static final String ESC = "\u001b[";
+
+    @Test
+    void refresh_FirstFrameThenOnlyTheChangedCells() throws Exception {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "1");
+        properties.put("Columns", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        // the cells that hold a space already are skipped, so the names have none
+        properties.put("PlayerNames", "Ann,Bob");
+        // a single refresh when the user interface starts, and the next one when it is disposed
+        properties.put("TerminalRefreshSeconds", "1000");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8.name());
+
+        UserInterfaceTerminal ui = new UserInterfaceTerminal(logger, config, new LatencyTracer(config), out);
+        String first = awaitFrame(bytes, ESC + "2J" + ESC + "?25l");
+        assertTrue(first.contains("[----]"));
+        assertTrue(first.contains("Ann"));
+        assertTrue(first.contains("Bob"));
+
+        ui.placeCard(0, 0);
+        ui.placeToken(1, 2);
+        ui.dispose();
+        String diff = bytes.toString(StandardCharsets.UTF_8.name()).substring(first.length());
+
+        // the card of slot 0 is on line 3 (after the timer line and a blank line), inside its brackets
+        assertTrue(diff.contains(ESC + "3;3H" + ESC + "0m0000"));
+        // the token of the second player is on the line below the cards of the third slot (cells are 8 columns wide)
+        assertTrue(diff.contains(ESC + "4;18H" + ESC + "0;1m2"));
+        // nothing else is redrawn
+        assertEquals("00002", diff.replaceAll("\u001b\\[[0-9;?]*[A-Za-z]", ""));
+    }
+
+    /**
+     * @return - the output once the refresh thread wrote its first frame after the given prefix.
+     */
+    private static String awaitFrame(ByteArrayOutputStream bytes, String prefix) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        String output = bytes.toString(StandardCharsets.UTF_8.name());
+        while (output.length() <= prefix.length() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            output = bytes.toString(StandardCharsets.UTF_8.name());
+        }
+        assertTrue(output.startsWith(prefix));
+        return output;
+    }
+}
@@ -0,0 +1,195 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    /**
+     * The deck shapes searched: {featureSize, featureCount}.
+     */
+    private static final int[][] SHAPES = {{3, 4}, {3, 3}, {2, 3}, {4, 3}, {5, 2}};
+
+    private static Config config(int featureSize, int featureCount, int parallelSearchThreshold) {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("ParallelSearchThreshold", Integer.toString(parallelSearchThreshold));
+        return new Config(logger, properties);
+    }
+
+    /**
+     * @return - length distinct random cards of the deck.
+     */
+    private static int[] randomTable(Random random, int deckSize, int length) {
+        int[] deck = new int[deckSize];
+        for (int i = 0; i < deckSize; i++) deck[i] = i;
+        for (int i = 0; i < length; i++) {
+            int j = i + random.nextInt(deckSize - i);
+            int swap = deck[i];
+            deck[i] = deck[j];
+            deck[j] = swap;
+        }
+        return Arrays.copyOf(deck, length);
+    }
+
+    /**
+     * Checks a set from the definition: every feature is the same on all the cards or different on all of them.
+     */
+    private static boolean isSet(int[] cards, int featureSize, int featureCount) {
+        for (int i = 0, weight = 1; i < featureCount; i++, weight *= featureSize) {
+            boolean[] seen = new boolean[featureSize];
+            int distinct = 0;
+            for (int card : cards)
+                if (!seen[card / weight % featureSize]) {
+                    seen[card / weight % featureSize] = true;
+                    distinct++;
+                }
+            if (distinct != 1 && distinct != cards.length) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return - all the sets among the cards, each sorted, in lexicographic order.
+     */
+    private static List<int[]> bruteForce(int[] cards, int featureSize, int featureCount) {
+        int[] sorted = cards.clone();
+        Arrays.sort(sorted);
+        List<int[]> sets = new ArrayList<>();
+        if (sorted.length < featureSize) return sets;
+        int[] combination = new int[featureSize];
+        for (int i = 0; i < featureSize; i++) combination[i] = i;
+        while (true) {
+            int[] set = new int[featureSize];
+            for (int i = 0; i < featureSize; i++) set[i] = sorted[combination[i]];
+            if (isSet(set, featureSize, featureCount)) sets.add(set);
+            int t = featureSize - 1;
+            while (t >= 0 && combination[t] == sorted.length - featureSize + t) --t;
+            if (t < 0) return sets;
+            combination[t]++;
+            for (int i = t + 1; i < featureSize; i++) combination[i] = combination[i - 1] + 1;
+        }
+    }
+
+    private static void assertSetsEqual(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(Arrays.toString(expected.get(i)), Arrays.toString(actual.get(i)));
+    }
+
+    @Test
+    void findSets_SameAsBruteForce() {
+
+        Random random = new Random(28);
+        for (int[] shape : SHAPES) {
+            int featureSize = shape[0], featureCount = shape[1];
+            UtilImpl util = new UtilImpl(config(featureSize, featureCount, 0));
+            int deckSize = (int) Math.pow(featureSize, featureCount);
+            for (int round = 0; round < 50; round++) {
+                int[] table = randomTable(random, deckSize, random.nextInt(Math.min(deckSize, 20) + 1));
+                List<int[]> expected = bruteForce(table, featureSize, featureCount);
+
+                assertSetsEqual(expected, util.findSets(table, table.length, Integer.MAX_VALUE));
+                // the count limit keeps the first sets
+                int count = 1 + random.nextInt(3);
+                assertSetsEqual(expected.subList(0, Math.min(count, expected.size())),
+                        util.findSets(table, table.length, count));
+            }
+        }
+    }
+
+    @Test
+    void findSets_TableWithNoSet() {
+
+        UtilImpl util = new UtilImpl(config(3, 4, 0));
+        // 0000, 0001, 0010 and 0011: every three of them have a feature with two equal values
+        int[] table = {0, 1, 3, 4};
+
+        assertTrue(bruteForce(table, 3, 4).isEmpty());
+        assertTrue(util.findSets(table, table.length, Integer.MAX_VALUE).isEmpty());
+        assertTrue(util.findSets(table, 0, Integer.MAX_VALUE).isEmpty());
+        assertTrue(util.findSets(new int[]{0, 1, 2}, 3, 0).isEmpty());
+    }
+
+    @Test
+    void findSets_ParallelSameAsSequential() {
+
+        Random random = new Random(30);
+        for (int[] shape : SHAPES) {
+            int featureSize = shape[0], featureCount = shape[1];
+            UtilImpl sequential = new UtilImpl(config(featureSize, featureCount, 0));
+            // every search is above the threshold, so it runs on the fork/join pool
+            UtilImpl parallel = new UtilImpl(config(featureSize, featureCount, 1));
+            int deckSize = (int) Math.pow(featureSize, featureCount);
+            for (int round = 0; round < 20; round++) {
+                int[] table = randomTable(random, deckSize, random.nextInt(deckSize + 1));
+                for (int count : new int[]{1, 7, Integer.MAX_VALUE})
+                    assertSetsEqual(sequential.findSets(table, table.length, count),
+                            parallel.findSets(table, table.length, count));
+            }
+        }
+    }
+
+    /**
+     * @return - a random legal set: every feature is either the same on all the cards or a permutation of the values.
+     */
+    private static int[] randomSet(Random random, int featureSize, int featureCount) {
+        int[] cards = new int[featureSize];
+        for (int i = 0, weight = 1; i < featureCount; i++, weight *= featureSize) {
+            boolean same = random.nextBoolean();
+            int value = random.nextInt(featureSize);
+            int[] values = randomTable(random, featureSize, featureSize);
+            for (int j = 0; j < featureSize; j++) cards[j] += (same ? value : values[j]) * weight;
+        }
+        return cards;
+    }
+
+    @Test
+    void testSets_SameAsTestSet() {
+
+        Random random = new Random(31);
+        // the three bit trick, the generic per feature count, all 64 bits of the packed features used, and the
+        // features not fitting in a long (checked one by one)
+        int[][] shapes = {{3, 4}, {3, 19}, {2, 30}, {4, 3}, {8, 8}, {9, 8}};
+        for (int[] shape : shapes) {
+            int featureSize = shape[0], featureCount = shape[1];
+            UtilImpl util = new UtilImpl(config(featureSize, featureCount, 0));
+            int deckSize = (int) Math.pow(featureSize, featureCount);
+            // the lengths around the boundaries of the words of the result
+            for (int length : new int[]{1, 63, 64, 65, 127, 128, 129}) {
+                int[][] candidates = new int[featureSize][length];
+                boolean[] expected = new boolean[length];
+                for (int i = 0; i < length; i++) {
+                    int[] cards = randomSet(random, featureSize, featureCount);
+                    if (random.nextInt(3) == 0)
+                        for (int j = 0; j < featureSize; j++) cards[j] = random.nextInt(deckSize);
+                    else if (random.nextInt(3) == 0) { // the last feature of one card changed
+                        int j = random.nextInt(featureSize);
+                        cards[j] += (cards[j] + 1) % featureSize - cards[j] % featureSize;
+                    }
+                    for (int j = 0; j < featureSize; j++) candidates[j][i] = cards[j];
+                    expected[i] = util.testSet(cards);
+                }
+
+                long[] result = util.testSets(candidates, length);
+                assertEquals((length + Long.SIZE - 1) / Long.SIZE, result.length);
+                for (int i = 0; i < length; i++)
+                    assertEquals(expected[i], (result[i / Long.SIZE] >>> i & 1) != 0, "candidate " + i);
+                // no bit is set beyond the candidates
+                if (length % Long.SIZE != 0) assertEquals(0, result[result.length - 1] >>> (length % Long.SIZE));
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaimValidatorTest {
+
+    Env env;
+    Table table;
+    ClaimValidator validator;
+    List<Claim> committed;
+    CountDownLatch done;
+
+    @BeforeEach
+    void setUp() {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = new Table(env);
+        this.env = env;
+        for (int slot = 0; slot < 4; slot++)
+            table.placeCard(slot, slot); // cards 0, 1 and 2 are a legal set, cards 0, 1 and 3 are not
+
+        committed = new ArrayList<>();
+        done = new CountDownLatch(0);
+        validator = new ClaimValidator(env, table, 4, claim -> {
+            committed.add(claim);
+            done.countDown();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        validator.terminate();
+    }
+
+    private Claim claim(int player, int[] cards) {
+        return new Claim(player, table.generation(), cards.clone(), cards.clone());
+    }
+
+    @Test
+    void submit_CommittedInSubmissionOrder() throws InterruptedException {
+
+        int claims = 500;
+        done = new CountDownLatch(claims);
+        for (int i = 0; i < claims; i++)
+            validator.submit(claim(i % 2, i % 2 == 0 ? new int[]{0, 1, 2} : new int[]{0, 1, 3}));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(claims, committed.size());
+        for (int i = 0; i < claims; i++) {
+            assertEquals(i, committed.get(i).sequence);
+            assertEquals(i % 2 == 0, committed.get(i).legal);
+            assertFalse(committed.get(i).stale);
+        }
+    }
+
+    @Test
+    void submit_StaleWhenCardsMoved() throws InterruptedException {
+
+        Claim claim = claim(0, new int[]{0, 1, 2});
+        table.removeCard(2);
+        table.placeCard(7, 2);
+
+        done = new CountDownLatch(1);
+        validator.submit(claim);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertTrue(committed.get(0).legal);
+        assertTrue(committed.get(0).stale);
+    }
+
+    @Test
+    void submit_FailedCheckIsCommittedAsStale() throws InterruptedException {
+
+        validator.terminate();
+        Env failing = new Env(env.logger, env.config, env.ui, new UtilImpl(env.config) {
+            @Override
+            public boolean testSet(int[] cards) {
+                if (cards[2] == 3) throw new IllegalStateException("test");
+                return super.testSet(cards);
+            }
+        });
+        validator = new ClaimValidator(failing, table, 4, claim -> {
+            committed.add(claim);
+            done.countDown();
+        });
+
+        done = new CountDownLatch(3);
+        validator.submit(claim(0, new int[]{0, 1, 3}));
+        validator.submit(claim(1, new int[]{0, 1, 2}));
+        validator.submit(claim(0, new int[]{0, 1, 3}));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(3, committed.size());
+        assertTrue(committed.get(0).legal);
+        assertTrue(committed.get(0).stale);
+        assertTrue(committed.get(1).legal);
+        assertFalse(committed.get(1).stale);
+        assertTrue(committed.get(2).stale);
+    }
+}
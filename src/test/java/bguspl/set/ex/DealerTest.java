@@ -0,0 +1,301 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.LatencyTracer;
+import bguspl.set.TimerWheel;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class DealerTest {
+
+    /**
+     * The cards whose features are all 0 or 1: no three of them form a set.
+     */
+    private static final int[] NO_SET = IntStream.range(0, 81)
+            .filter(card -> Integer.toString(card, 3).chars().allMatch(digit -> digit != '2'))
+            .toArray();
+
+    Config config;
+    Util util;
+    RecordingUserInterface ui;
+    CountingTimerWheel timers;
+    Table table;
+    Deck deck;
+    Dealer dealer;
+    Thread dealerThread;
+
+    @Mock
+    Player player;
+
+    /**
+     * Creates the game (a table of 3 by 4 with a single player and a guaranteed set, unless overridden).
+     *
+     * @param settings - the properties to override, as key and value pairs.
+     */
+    private void create(String... settings) {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("HumanPlayers", "1");
+        properties.put("ComputerPlayers", "0");
+        properties.put("GuaranteeSet", "True");
+        for (int i = 0; i < settings.length; i += 2) properties.put(settings[i], settings[i + 1]);
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        config = new Config(logger, properties);
+        util = new UtilImpl(config);
+        ui = new RecordingUserInterface();
+        timers = new CountingTimerWheel(logger, config);
+
+        Env env = new Env(logger, config, ui, util, new LatencyTracer(config), timers);
+        table = new Table(env);
+        deck = new Deck(config.deckSize, 42);
+        deck.shuffle();
+        dealer = new Dealer(env, table, new Player[]{player}, null, deck);
+    }
+
+    private void start() {
+        dealerThread = new Thread(dealer, "dealer");
+        dealerThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (dealerThread != null) {
+            dealer.terminate();
+            dealerThread.join(2000);
+            assertFalse(dealerThread.isAlive());
+        }
+        timers.terminate();
+    }
+
+    /**
+     * Waits (a few seconds at most) until a condition holds.
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Moves cards to the top of the deck, the last one on top.
+     */
+    private void stackOnTop(int[] cards) {
+        for (int card : cards) {
+            assertTrue(deck.take(card));
+            deck.returnCard(card);
+        }
+    }
+
+    private boolean hasSet(int[] cards) {
+        return !util.findSets(cards, cards.length, 1).isEmpty();
+    }
+
+    /**
+     * Asserts that every card is either on the table or in the deck, exactly once.
+     */
+    private void assertNoCardDuplicatedOrLost() {
+        int[] all = IntStream.concat(Arrays.stream(table.snapshot().cards()), Arrays.stream(deck.cards()))
+                .sorted().toArray();
+        assertArrayEquals(IntStream.range(0, config.deckSize).toArray(), all);
+    }
+
+    @Test
+    void placeCardsOnTable_DeadDealIsSwappedForASet() {
+
+        create();
+        // the top of the deck would be dealt as a table with no set
+        int[] top = Arrays.copyOf(NO_SET, config.tableSize);
+        stackOnTop(top);
+        assertFalse(hasSet(top));
+
+        assertEquals(config.tableSize, dealer.placeCardsOnTable());
+
+        int[] cards = table.snapshot().cards();
+        assertTrue(hasSet(cards));
+        // fresh cards were taken from the deck, and the cards they displaced were returned to it
+        assertFalse(Arrays.stream(cards).allMatch(card -> Arrays.stream(top).anyMatch(c -> c == card)));
+        assertEquals(config.deckSize - config.tableSize, deck.size());
+        assertNoCardDuplicatedOrLost();
+    }
+
+    @Test
+    void placeCardsOnTable_SingleSlotCompletesASet() {
+
+        create();
+        // fewer slots than a set are dealt, so the set must be completed from the cards on the table
+        int kept = config.tableSize - 1;
+        for (int slot = 0; slot < kept; slot++) {
+            assertTrue(deck.take(NO_SET[slot]));
+            table.placeCard(NO_SET[slot], slot);
+        }
+        stackOnTop(new int[]{NO_SET[kept]});
+        assertFalse(hasSet(Arrays.copyOf(NO_SET, config.tableSize)));
+
+        assertEquals(1, dealer.placeCardsOnTable());
+
+        int[] cards = table.snapshot().cards();
+        assertEquals(config.tableSize, cards.length);
+        assertTrue(hasSet(cards));
+        assertTrue(Arrays.stream(deck.cards()).anyMatch(card -> card == NO_SET[kept]));
+        assertNoCardDuplicatedOrLost();
+    }
+
+    @Test
+    void run_ElapsedTimerIsResetWhenASetIsCollected() throws InterruptedException {
+
+        create("TurnTimeoutSeconds", "0");
+        start();
+        await(() -> ui.elapsed().contains(1000L));
+
+        // the player collects a set from the table
+        int[] set = util.findSets(table.snapshot().cards(), config.tableSize, 1).get(0);
+        for (int card : set) table.placeToken(0, table.cardToSlot(card));
+        TableSnapshot snapshot = table.snapshot();
+        int[] slots = table.getTokenSlots(0);
+        int[] cards = Arrays.stream(slots).map(snapshot::card).toArray();
+        int updates = ui.elapsed().size();
+        Claim claim = new Claim(0, snapshot.generation, slots, cards);
+        dealer.submit(claim);
+
+        assertEquals(Claim.Verdict.POINT, claim.await());
+        await(() -> {
+            List<Long> elapsed = ui.elapsed();
+            return elapsed.subList(updates, elapsed.size()).contains(0L);
+        });
+        assertEquals(0, ui.countdowns.get());
+    }
+
+    @Test
+    void run_ElapsedTimerIsResetOnAReshuffle() throws InterruptedException {
+
+        // a table of 3 cards is dead (and reshuffled) unless its cards happen to be a set
+        create("TurnTimeoutSeconds", "0", "Rows", "1", "Columns", "3", "GuaranteeSet", "False");
+        start();
+        await(() -> ui.deals.get() >= 3);
+        dealer.terminate();
+        dealerThread.join(2000);
+
+        // every deal of the table is followed by a reset of the elapsed timer
+        long resets = ui.elapsed().stream().filter(millis -> millis == 0).count();
+        assertTrue(resets >= ui.deals.get(), resets + " resets for " + ui.deals.get() + " deals");
+    }
+
+    @Test
+    void run_NoTimerSchedulesNoTicks() throws InterruptedException {
+
+        create("TurnTimeoutSeconds", "-1");
+        start();
+        // waiting without a timeout: only a claim or the end of the game wakes the dealer up
+        await(() -> dealerThread.getState() == Thread.State.WAITING);
+
+        assertEquals(0, timers.scheduled.get());
+        assertTrue(ui.elapsed().isEmpty());
+        assertEquals(0, ui.countdowns.get());
+    }
+
+    @Test
+    void run_DeadTableIsReshuffledWithoutWaitingForTheTimeout() throws InterruptedException {
+
+        create("TurnTimeoutSeconds", "60", "Rows", "1", "Columns", "3", "GuaranteeSet", "False");
+        long started = System.currentTimeMillis();
+        start();
+        await(() -> ui.deals.get() >= 3);
+
+        assertTrue(System.currentTimeMillis() - started < config.turnTimeoutMillis);
+        // every reshuffle deals other cards, rather than the dead table again
+        List<String> tables = ui.tables();
+        for (int i = 1; i < tables.size(); i++)
+            assertNotEquals(tables.get(i - 1), tables.get(i), "deal " + i + " of " + tables);
+    }
+
+    /**
+     * Records the timer updates and the deals of the table.
+     */
+    static class RecordingUserInterface extends TableTest.MockUserInterface {
+
+        private final List<Long> elapsed = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> tables = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger countdowns = new AtomicInteger();
+        final AtomicInteger deals = new AtomicInteger();
+
+        List<Long> elapsed() {
+            synchronized (elapsed) {
+                return new ArrayList<>(elapsed);
+            }
+        }
+
+        /**
+         * @return - the cards of each deal of the table (sorted).
+         */
+        List<String> tables() {
+            synchronized (tables) {
+                return new ArrayList<>(tables);
+            }
+        }
+
+        @Override
+        public void setElapsed(long millies) {
+            elapsed.add(millies);
+        }
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {
+            countdowns.incrementAndGet();
+        }
+
+        @Override
+        public void placeCards(int[] cards, int[] slots) {
+            int[] sorted = cards.clone();
+            Arrays.sort(sorted);
+            tables.add(Arrays.toString(sorted));
+            deals.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts the tasks scheduled on the timer.
+     */
+    static class CountingTimerWheel extends TimerWheel {
+
+        final AtomicInteger scheduled = new AtomicInteger();
+
+        CountingTimerWheel(TableTest.MockLogger logger, Config config) {
+            super(logger, config);
+        }
+
+        @Override
+        public Timeout schedule(long delayMillis, Runnable task) {
+            scheduled.incrementAndGet();
+            return super.schedule(delayMillis, task);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    private static final int DECK_SIZE = 81;
+
+    Deck deck;
+
+    @BeforeEach
+    void setUp() {
+        deck = new Deck(DECK_SIZE, 42);
+    }
+
+    private int[] dealAll(Deck deck) {
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; i++)
+            cards[i] = deck.deal();
+        return cards;
+    }
+
+    @Test
+    void deal_AllCardsAreDealtOnce() {
+
+        deck.shuffle();
+        int[] cards = dealAll(deck);
+
+        assertTrue(deck.isEmpty());
+        Arrays.sort(cards);
+        for (int i = 0; i < DECK_SIZE; i++)
+            assertEquals(i, cards[i]);
+    }
+
+    @Test
+    void deal_EmptyDeck() {
+
+        dealAll(deck);
+        assertThrows(NoSuchElementException.class, deck::deal);
+    }
+
+    @Test
+    void returnCard_CardIsDealtAgain() {
+
+        int card = deck.deal();
+        deck.returnCard(card);
+
+        assertEquals(DECK_SIZE, deck.size());
+        assertEquals(card, deck.deal());
+    }
+
+    @Test
+    void returnCard_FullDeck() {
+
+        assertThrows(IllegalStateException.class, () -> deck.returnCard(0));
+    }
+
+    @Test
+    void shuffle_SameSeedSameOrder() {
+
+        Deck other = new Deck(DECK_SIZE, 42);
+        deck.shuffle();
+        other.shuffle();
+
+        assertArrayEquals(dealAll(other), dealAll(deck));
+    }
+
+    @Test
+    void shuffle_OnlyRemainingCards() {
+
+        int first = deck.deal();
+        deck.shuffle();
+        int[] cards = dealAll(deck);
+
+        assertEquals(DECK_SIZE - 1, cards.length);
+        assertFalse(Arrays.stream(cards).anyMatch(card -> card == first));
+    }
+
+    @Test
+    void take_RemovesOnlyThatCard() {
+
+        assertTrue(deck.take(40));
+        assertFalse(deck.take(40));
+        assertEquals(DECK_SIZE - 1, deck.size());
+
+        int[] cards = deck.cards();
+        Arrays.sort(cards);
+        assertTrue(Arrays.binarySearch(cards, 40) < 0);
+        assertEquals(DECK_SIZE - 1, Arrays.stream(cards).distinct().count());
+    }
+}
@@ -0,0 +1,197 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HintServiceTest {
+
+    Table table;
+    HintService hints;
+    TableTest.MockLogger logger;
+
+    @BeforeEach
+    void setUp() {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = new Table(env);
+        hints = table.hintService();
+    }
+
+    @Test
+    void sets_CachedUntilTableChanges() {
+
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(2, 2); // cards 0, 1 and 2 differ only in the last feature: a legal set
+
+        List<int[]> sets = hints.sets();
+        assertEquals(1, sets.size());
+        assertArrayEquals(new int[]{0, 1, 2}, sets.get(0));
+        assertSame(sets, hints.sets());
+        assertEquals(table.generation(), hints.cachedGeneration());
+    }
+
+    @Test
+    void sets_UpdatedAfterRemovalAndPlacement() {
+
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(2, 2);
+        table.placeCard(4, 3);
+        hints.sets();
+
+        table.removeCard(2);
+        assertTrue(hints.sets().isEmpty());
+
+        table.placeCard(8, 2); // 0, 4 and 8 differ in the last two features: a legal set
+        List<int[]> sets = hints.sets();
+        assertEquals(1, sets.size());
+        assertEquals("[0, 4, 8]", Arrays.toString(sets.get(0)));
+    }
+
+    @Test
+    void hints_LoggedOncePerTableChange() {
+
+        List<String> logged = new ArrayList<>();
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logged.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(2, 2);
+
+        table.hints();
+        table.hints(); // same table: nothing new to log
+        assertEquals(1, logged.size());
+        assertTrue(logged.get(0).startsWith("Hint: Set found: slots: [0, 1, 2]"));
+
+        table.placeCard(4, 3);
+        table.hints();
+        assertEquals(2, logged.size());
+    }
+
+    @Test
+    void hints_LoggedOnTheHintThread() throws InterruptedException {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("Hints", "True");
+        Config config = new Config(logger, properties);
+        Table table = new Table(new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config)));
+        BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getMessage().startsWith("Hint:")) threads.add(Thread.currentThread().getName());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        table.replaceCards(new int[]{0, 1, 2}, new int[]{0, 1, 2});
+        assertEquals("hints", threads.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void sets_UpdatesSameAsSearchingTheWholeTable() {
+
+        for (int featureSize : new int[]{3, 4}) {
+            Properties properties = new Properties();
+            properties.put("Rows", "6");
+            properties.put("Columns", "5");
+            properties.put("FeatureSize", Integer.toString(featureSize));
+            properties.put("FeatureCount", "4");
+            properties.put("TableDelaySeconds", "0");
+            Config config = new Config(logger, properties);
+            UtilImpl util = new UtilImpl(config);
+            Table table = new Table(new Env(logger, config, new TableTest.MockUserInterface(), util));
+            Random random = new Random(featureSize);
+
+            List<Integer> deck = new ArrayList<>();
+            for (int card = 0; card < config.deckSize; card++) deck.add(card);
+            Collections.shuffle(deck, random);
+            for (int slot = 0; slot < config.tableSize; slot++) table.placeCard(deck.remove(deck.size() - 1), slot);
+            table.hintService().sets();
+
+            for (int change = 0; change < 50; change++) {
+                // a few slots get new cards (or are emptied)
+                for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                    int slot = random.nextInt(config.tableSize);
+                    int card = table.snapshot().card(slot);
+                    if (card != TableSnapshot.NO_CARD) {
+                        table.removeCard(slot);
+                        deck.add(card);
+                        Collections.shuffle(deck, random);
+                    }
+                    if (random.nextInt(4) > 0) table.placeCard(deck.remove(deck.size() - 1), slot);
+                }
+                int[] cards = table.snapshot().cards();
+                assertEquals(sorted(util.findSets(cards, cards.length, Integer.MAX_VALUE)),
+                        sorted(table.hintService().sets()), "change " + change + " with sets of " + featureSize);
+            }
+        }
+    }
+
+    private static List<String> sorted(List<int[]> sets) {
+        List<String> sorted = new ArrayList<>();
+        for (int[] set : sets) {
+            int[] cards = set.clone();
+            Arrays.sort(cards);
+            sorted.add(Arrays.toString(cards));
+        }
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
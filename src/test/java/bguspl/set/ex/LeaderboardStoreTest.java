@@ -0,0 +1,95 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaderboardStoreTest {
+
+    private static final String[] NAMES = {"Alice", "Bob", "Carol"};
+
+    @TempDir
+    Path directory;
+
+    private Path file() {
+        return directory.resolve("leaderboard.log");
+    }
+
+    @Test
+    void record_StandingsAreRanked() throws IOException {
+
+        try (LeaderboardStore store = new LeaderboardStore(file())) {
+            store.record(NAMES, new int[]{1, 3, 2});
+            store.record(NAMES, new int[]{4, 0, 2});
+
+            List<LeaderboardStore.Standing> top = store.top(2);
+            assertEquals("Alice", top.get(0).name);
+            assertEquals(5, top.get(0).total);
+            assertEquals(1, top.get(0).wins);
+            assertEquals("Carol", top.get(1).name);
+            assertEquals(2, store.standing("Bob").games);
+            assertEquals(4, store.recentGames().get(0).score(0));
+        }
+    }
+
+    @Test
+    void open_RecoversTheLog() throws IOException {
+
+        try (LeaderboardStore store = new LeaderboardStore(file())) {
+            store.record(NAMES, new int[]{1, 3, 2});
+        }
+        try (LeaderboardStore store = new LeaderboardStore(file())) {
+            assertEquals(3, store.standing("Bob").total);
+            assertEquals(1, store.recentGames().size());
+        }
+    }
+
+    @Test
+    void open_TornRecordIsCutOff() throws IOException {
+
+        try (LeaderboardStore store = new LeaderboardStore(file())) {
+            store.record(NAMES, new int[]{1, 3, 2});
+            store.record(NAMES, new int[]{1, 1, 1});
+        }
+        long size = Files.size(file());
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (LeaderboardStore store = new LeaderboardStore(file())) {
+            assertEquals(3, store.standing("Bob").total);
+            store.record(NAMES, new int[]{0, 2, 0});
+        }
+        try (LeaderboardStore store = new LeaderboardStore(file())) {
+            assertEquals(5, store.standing("Bob").total);
+            assertEquals(2, store.recentGames().size());
+        }
+    }
+
+    @Test
+    void compact_KeepsStandingsAndRecentGames() throws IOException {
+
+        try (LeaderboardStore store = new LeaderboardStore(file(), 10)) {
+            for (int i = 0; i < 105; i++)
+                store.record(NAMES, new int[]{i % 3, 1, 0});
+        }
+        // the standings, the recent games and the 5 games recorded since the last compaction
+        assertTrue(Files.size(file()) < 30 * 60);
+
+        try (LeaderboardStore store = new LeaderboardStore(file())) {
+            assertEquals(105, store.standing("Bob").total);
+            assertEquals(105, store.standing("Carol").games);
+            assertEquals(LeaderboardStore.RECENT_GAMES, store.recentGames().size());
+            assertEquals(104 % 3, store.recentGames().get(0).score(0));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LobbyTest {
+
+    private static final long MAX_WAIT_MILLIS = 1000;
+    private static final long MAX_WAIT_NANOS = MAX_WAIT_MILLIS * 1_000_000L;
+
+    Lobby lobby;
+    List<Lobby.Match> matches;
+
+    @BeforeEach
+    void setUp() {
+        matches = new ArrayList<>();
+        lobby = new Lobby(100, MAX_WAIT_MILLIS, matches::add);
+    }
+
+    @Test
+    void enqueue_FullBucketStartsAGame() {
+
+        lobby.enqueue("a", 150, 3, null, 0);
+        lobby.enqueue("b", 10, 3, null, 0);
+        lobby.enqueue("c", 120, 3, null, 0);
+        assertTrue(matches.isEmpty());
+
+        lobby.enqueue("d", 199, 3, null, 0);
+        assertEquals(1, matches.size());
+        assertEquals(3, matches.get(0).humans.size());
+        assertEquals(0, matches.get(0).computers);
+        assertEquals("a", matches.get(0).humans.get(0).name);
+        assertEquals(1, lobby.waiting());
+    }
+
+    @Test
+    void expire_NearbyBandsAreBackfilledWithComputers() {
+
+        lobby.enqueue("a", 150, 4, null, 0);
+        lobby.enqueue("b", 250, 4, null, 1);
+        lobby.enqueue("c", 950, 4, null, 2);
+
+        assertEquals(0, lobby.expire(MAX_WAIT_NANOS - 1));
+        assertEquals(2, lobby.expire(MAX_WAIT_NANOS + 2));
+
+        assertEquals(2, matches.get(0).humans.size());
+        assertEquals(2, matches.get(0).computers);
+        assertEquals(1, matches.get(1).humans.size());
+        assertEquals(3, matches.get(1).computers);
+        assertEquals(0, lobby.waiting());
+    }
+
+    @Test
+    void cancel_PlayerIsNotMatched() {
+
+        Lobby.Ticket ticket = lobby.enqueue("a", 150, 2, null, 0);
+        assertTrue(lobby.cancel(ticket));
+        lobby.enqueue("b", 150, 2, null, 0);
+
+        assertTrue(matches.isEmpty());
+        assertEquals(1, lobby.expire(MAX_WAIT_NANOS));
+        assertEquals("b", matches.get(0).humans.get(0).name);
+        assertFalse(lobby.cancel(ticket));
+    }
+}
@@ -0,0 +1,69 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LockProfilerTest {
+
+    @Test
+    void lock_NotWrappedWhenDisabled() {
+
+        LockProfiler profiler = new LockProfiler(false);
+        assertTrue(profiler.lock("slot") instanceof ReentrantLock);
+        assertArrayEquals(new long[2], profiler.acquisitions("slot"));
+    }
+
+    @Test
+    void lock_ContendedAcquisitionIsRecordedWithItsCallSite() throws InterruptedException {
+
+        LockProfiler profiler = new LockProfiler(true);
+        Lock lock = profiler.lock("slot");
+        CountDownLatch locked = new CountDownLatch(1);
+
+        lock.lock();
+        lock.lock(); // reentrant: a single hold
+        Thread waiter = new Thread(() -> {
+            locked.countDown();
+            lock.lock();
+            lock.unlock();
+        });
+        waiter.start();
+        locked.await();
+        while (waiter.getState() != Thread.State.WAITING) Thread.yield();
+        Thread.sleep(5);
+        lock.unlock();
+        lock.unlock();
+        waiter.join();
+
+        assertArrayEquals(new long[]{3, 1}, profiler.acquisitions("slot"));
+        assertTrue(profiler.percentileNanos("slot", false, 100) >= 1_000_000);
+        assertTrue(profiler.percentileNanos("slot", true, 100) >= 1_000_000);
+        assertEquals(1, profiler.topSites("slot").size());
+        assertTrue(profiler.topSites("slot").get(0).startsWith(LockProfilerTest.class.getName()));
+    }
+
+    @Test
+    void readWriteLock_ReadAndWriteReportedSeparately() {
+
+        LockProfiler profiler = new LockProfiler(true);
+        ReadWriteLock lock = profiler.readWriteLock("table");
+        lock.readLock().lock();
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        lock.writeLock().unlock();
+        lock.writeLock().lock();
+        lock.writeLock().unlock();
+
+        assertEquals(1, profiler.acquisitions("table.read")[0]);
+        assertEquals(2, profiler.acquisitions("table.write")[0]);
+        assertTrue(profiler.report().contains("table.write: acquired=2 contended=0"));
+    }
+}
@@ -2,22 +2,27 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.LatencyTracer;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private Map<Integer, Integer> cardToSlot;
 
     @BeforeEach
     void setUp() {
@@ -32,34 +37,31 @@ class TableTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        Arrays.fill(slotToCard, TableSnapshot.NO_CARD);
+        cardToSlot = new HashMap<>();
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
     }
 
     private int fillSomeSlots() {
-        slotToCard[1] = 3;
-        slotToCard[2] = 5;
-        cardToSlot[3] = 1;
-        cardToSlot[5] = 2;
+        table.placeCard(3, 1);
+        table.placeCard(5, 2);
 
         return 2;
     }
 
     private void fillAllSlots() {
-        for (int i = 0; i < slotToCard.length; ++i) {
-            slotToCard[i] = i;
-            cardToSlot[i] = i;
-        }
+        for (int i = 0; i < slotToCard.length; ++i)
+            table.placeCard(i, i);
     }
 
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, (int) cardToSlot.get(8));
     }
 
     @Test
@@ -95,6 +97,90 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void snapshot_ReflectsPlacedAndRemovedCards() {
+
+        fillSomeSlots();
+        TableSnapshot before = table.snapshot();
+        table.removeCard(1);
+        TableSnapshot after = table.snapshot();
+
+        assertEquals(3, before.card(1));
+        assertEquals(TableSnapshot.NO_CARD, after.card(1));
+        assertEquals(5, after.card(2));
+        assertEquals(before.generation + 1, after.generation);
+        assertEquals(after.generation, table.generation());
+    }
+
+    @Test
+    void removeCard_RemovesTheTokensOfAllPlayers() {
+
+        fillAllSlots();
+        table.placeToken(0, 1);
+        table.placeToken(0, 2);
+        table.placeToken(1, 2);
+        table.placeToken(1, 3);
+        assertArrayEquals(new int[]{0, 1}, table.getPlayersWithTokenOn(2));
+
+        table.removeCard(2);
+
+        assertArrayEquals(new int[0], table.getPlayersWithTokenOn(2));
+        assertArrayEquals(new int[]{1}, table.getTokenSlots(0));
+        assertArrayEquals(new int[]{3}, table.getTokenSlots(1));
+    }
+
+    @Test
+    void replaceCards_PublishesOneGeneration() {
+
+        fillSomeSlots();
+        table.placeToken(0, 1);
+        long generation = table.generation();
+
+        int[] previous = table.replaceCards(new int[]{0, 1, 2}, new int[]{7, 8, TableSnapshot.NO_CARD});
+
+        assertArrayEquals(new int[]{TableSnapshot.NO_CARD, 3, 5}, previous);
+        assertEquals(generation + 1, table.generation());
+        assertArrayEquals(new int[]{7, 8, TableSnapshot.NO_CARD, TableSnapshot.NO_CARD}, slotToCard);
+        assertEquals(1, (int) cardToSlot.get(8));
+        assertEquals(2, cardToSlot.size());
+        assertArrayEquals(new int[0], table.getTokenSlots(0));
+        assertArrayEquals(new int[]{7, 8}, table.clearAll());
+        assertEquals(0, table.countCards());
+    }
+
+    @Test
+    void placeToken_DispatchBehindAnAnimationIsTraced() throws InterruptedException {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0.5");
+        properties.put("LatencyTracing", "True");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        LatencyTracer tracer = new LatencyTracer(config);
+        Table table = new Table(new Env(logger, config, new MockUserInterface(), new MockUtil(), tracer));
+
+        // the card is animated, so the token is shown after the player is done with the press
+        table.placeCard(3, 1);
+        tracer.dequeued(0, tracer.stamp());
+        table.placeToken(0, 1);
+        tracer.done(0);
+        assertEquals(0, samples(tracer, LatencyTracer.Stage.DISPATCH));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (samples(tracer, LatencyTracer.Stage.DISPATCH) == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(1, samples(tracer, LatencyTracer.Stage.DISPATCH));
+        assertEquals(1, samples(tracer, LatencyTracer.Stage.TOTAL));
+    }
+
+    private static long samples(LatencyTracer tracer, LatencyTracer.Stage stage) {
+        return Arrays.stream(tracer.histogram(0, stage)).sum();
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -138,11 +224,26 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
+        @Override
+        public long[] testSets(int[][] candidates, int length) {
+            return new long[0];
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public List<int[]> findSets(int[] cards, int length, int count) {
+            return null;
+        }
+
         @Override
         public void spin() {}
     }
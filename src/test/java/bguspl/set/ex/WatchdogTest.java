@@ -0,0 +1,91 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WatchdogTest {
+
+    private static final long STALL_NANOS = 1000 * 1_000_000L;
+
+    private static Logger logger(List<String> messages) {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return logger;
+    }
+
+    @Test
+    void check_StallIsReportedOnceWithADumpOfTheStalledThread() throws InterruptedException {
+
+        List<String> messages = new ArrayList<>();
+        Watchdog watchdog = new Watchdog(logger(messages), 1000);
+        Object monitor = new Object();
+        CountDownLatch waiting = new CountDownLatch(1);
+        Thread stuck = new Thread(() -> {
+            synchronized (monitor) {
+                waiting.countDown();
+                try {
+                    monitor.wait();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, "stuck");
+        stuck.start();
+        waiting.await();
+        while (stuck.getState() != Thread.State.WAITING) Thread.yield();
+
+        Watchdog.Heartbeat heartbeat = watchdog.register("player-0", stuck);
+        long now = System.nanoTime();
+        assertEquals(0, watchdog.check(now));
+        assertEquals(1, watchdog.check(now + 2 * STALL_NANOS));
+        assertEquals(0, watchdog.check(now + 3 * STALL_NANOS)); // still the same stall
+        assertEquals(1, watchdog.stalls());
+        assertEquals(1, heartbeat.stalls());
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0).contains("player-0"));
+        assertTrue(messages.get(0).contains("\"stuck\""));
+        assertTrue(messages.get(0).contains("Object.wait"));
+
+        heartbeat.beat(); // progress: the next stall is a new one
+        assertEquals(1, watchdog.check(System.nanoTime() + 2 * STALL_NANOS));
+        assertEquals(2, watchdog.stalls());
+
+        stuck.interrupt();
+        stuck.join();
+    }
+
+    @Test
+    void check_IdleAndUnregisteredHeartbeatsNeverStall() {
+
+        Watchdog watchdog = new Watchdog(logger(new ArrayList<>()), 1000);
+        Watchdog.Heartbeat idle = watchdog.register("dealer", Thread.currentThread());
+        Watchdog.Heartbeat gone = watchdog.register("player-0", Thread.currentThread());
+        idle.idle();
+        watchdog.unregister(gone);
+
+        assertEquals(0, watchdog.check(System.nanoTime() + 2 * STALL_NANOS));
+        assertEquals(0, watchdog.stalls());
+    }
+}